@@ -0,0 +1,36 @@
+package com.citybus.benchmark;
+
+import com.citybus.model.AuthPrincipal;
+import com.citybus.service.AuthService;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token checks: full signature verification in {@code validateToken}, and
+ * {@code authenticate} once the token's principal is cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuthBenchmark {
+
+    private final AuthService authService = new AuthService();
+    private final String token = authService.generateToken(1L, "driver1", "driver", "bus-1");
+
+    @Benchmark
+    public Claims validateToken() {
+        return authService.validateToken(token);
+    }
+
+    @Benchmark
+    public AuthPrincipal authenticateCached() {
+        return authService.authenticate(token);
+    }
+}
@@ -0,0 +1,92 @@
+package com.citybus.benchmark;
+
+import com.citybus.util.DistanceCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One point against many: "which of these points are within 500 m", answered
+ * by a haversine loop and by the tiered batch check, plus the raw
+ * equirectangular distance pass. Points are spread over a 20 km square, so
+ * most are rejected and a few percent land near the threshold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistanceBatchBenchmark {
+
+    private static final double CENTER_LAT = 19.84;
+    private static final double CENTER_LNG = 75.25;
+    private static final double SPAN_DEGREES = 0.18;
+    private static final double RADIUS_KM = 0.5;
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "50000"})
+    public int points;
+
+    private double[] lats;
+    private double[] lngs;
+    private double[][] queries;
+    private double[] distances;
+    private int[] hits;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        lats = new double[points];
+        lngs = new double[points];
+        for (int i = 0; i < points; i++) {
+            lats[i] = CENTER_LAT + (random.nextDouble() - 0.5) * SPAN_DEGREES;
+            lngs[i] = CENTER_LNG + (random.nextDouble() - 0.5) * SPAN_DEGREES;
+        }
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = new double[] {
+                    CENTER_LAT + (random.nextDouble() - 0.5) * SPAN_DEGREES,
+                    CENTER_LNG + (random.nextDouble() - 0.5) * SPAN_DEGREES };
+        }
+        distances = new double[points];
+        hits = new int[points];
+    }
+
+    @Benchmark
+    public int haversineWithin() {
+        double[] query = nextQuery();
+        int found = 0;
+        for (int i = 0; i < points; i++) {
+            if (DistanceCalculator.getDistanceFromLatLonInKm(query[0], query[1], lats[i], lngs[i]) <= RADIUS_KM) {
+                hits[found++] = i;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int tieredWithin() {
+        double[] query = nextQuery();
+        return DistanceCalculator.withinKm(query[0], query[1], lats, lngs, points, RADIUS_KM, hits);
+    }
+
+    @Benchmark
+    public double[] approximateDistances() {
+        double[] query = nextQuery();
+        DistanceCalculator.approximateDistancesKm(query[0], query[1], lats, lngs, points, distances);
+        return distances;
+    }
+
+    private double[] nextQuery() {
+        double[] query = queries[next];
+        next = (next + 1) % QUERIES;
+        return query;
+    }
+}
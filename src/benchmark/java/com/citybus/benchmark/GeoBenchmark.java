@@ -0,0 +1,67 @@
+package com.citybus.benchmark;
+
+import com.citybus.service.RouteMatch;
+import com.citybus.service.RouteMatcher;
+import com.citybus.service.RouteStore;
+import com.citybus.util.DistanceCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix geometry: the haversine distance, the tiered threshold check used
+ * by proximity alerts, and snapping a fix onto route 1 as a bus moves along
+ * it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoBenchmark {
+
+    private final double[][] points = TrackingFixture.ROUTE_1_POINTS;
+    private RouteMatcher routeMatcher;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        RouteStore routeStore = new RouteStore("classpath:routes/routes.json", new DefaultResourceLoader(), event -> { });
+        routeStore.load();
+        routeMatcher = new RouteMatcher(75);
+        routeMatcher.setRoutes(routeStore.getRoutes());
+    }
+
+    @Benchmark
+    public double distance() {
+        double[] from = points[next];
+        next = (next + 1) % points.length;
+        double[] to = points[next];
+        return DistanceCalculator.getDistanceFromLatLonInKm(from[0], from[1], to[0], to[1]);
+    }
+
+    // Consecutive route points are tens of meters apart, so the fast path decides
+    @Benchmark
+    public boolean within() {
+        double[] from = points[next];
+        next = (next + 1) % points.length;
+        double[] to = points[next];
+        return DistanceCalculator.isWithinKm(from[0], from[1], to[0], to[1], 0.5);
+    }
+
+    // Walks the points in order, so the matcher's progress along the route stays valid
+    @Benchmark
+    public RouteMatch routeMatch() {
+        double[] point = points[next];
+        next = (next + 1) % points.length;
+        if (next == 0) {
+            routeMatcher.forget("bus-1");
+        }
+        return routeMatcher.match("bus-1", "1", point[0], point[1]);
+    }
+}
@@ -0,0 +1,75 @@
+package com.citybus.benchmark;
+
+import com.citybus.service.AssignmentRegistry;
+import com.citybus.service.BusTrackingService;
+import com.citybus.service.FleetRegistry;
+import com.citybus.service.GeofenceService;
+import com.citybus.service.RouteMatch;
+import com.citybus.service.RouteStore;
+import com.citybus.service.StopEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stop geofencing for one matched fix, with a bus driving route 1 end to end
+ * in 5 m steps, so the sequence includes every arrival and departure along
+ * the way. Route matching is done up front and not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeofenceBenchmark {
+
+    private static final double STEP_METERS = 5;
+    private static final double METERS_PER_DEGREE = 111_195;
+
+    private GeofenceService geofenceService;
+    private RouteMatch[] matches;
+    private int next;
+    private long timestamp;
+
+    @Setup
+    public void setUp() throws Exception {
+        RouteStore routeStore = new RouteStore("classpath:routes/routes.json", new DefaultResourceLoader(), event -> { });
+        routeStore.load();
+        BusTrackingService busTrackingService = new BusTrackingService(new FleetRegistry(), routeStore,
+                new AssignmentRegistry(routeStore, ""));
+        busTrackingService.initRoutes();
+        geofenceService = new GeofenceService(busTrackingService, 30, 45);
+        geofenceService.buildFences();
+
+        List<double[]> path = routeStore.getRoutes().get("1").getPath();
+        List<RouteMatch> walk = new ArrayList<>();
+        for (int i = 1; i < path.size(); i++) {
+            double[] from = path.get(i - 1);
+            double[] to = path.get(i);
+            double dLat = to[0] - from[0];
+            double dLng = (to[1] - from[1]) * Math.cos(Math.toRadians(from[0]));
+            int steps = (int) Math.ceil(Math.hypot(dLat, dLng) * METERS_PER_DEGREE / STEP_METERS);
+            for (int step = 0; step < steps; step++) {
+                double t = (double) step / steps;
+                walk.add(busTrackingService.matchToRoute("bus-1", "1",
+                        from[0] + t * (to[0] - from[0]), from[1] + t * (to[1] - from[1])));
+            }
+        }
+        matches = walk.toArray(new RouteMatch[0]);
+    }
+
+    @Benchmark
+    public List<StopEvent> busFix() {
+        RouteMatch match = matches[next];
+        next = (next + 1) % matches.length;
+        timestamp += 1000;
+        return geofenceService.onBusProgress("bus-1", match, timestamp);
+    }
+}
@@ -0,0 +1,51 @@
+package com.citybus.benchmark;
+
+import com.citybus.model.Position;
+import com.citybus.websocket.BinaryLocationCodec;
+import com.citybus.websocket.InboundMessageParser;
+import com.citybus.websocket.message.InboundMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one driver fix: the streaming typed parser, a JsonNode tree as
+ * the handler used to build, and the binary frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InboundParseBenchmark {
+
+    private static final String LOCATION_JSON =
+            "{\"type\":\"driver-location\",\"data\":{\"coords\":[19.840466,75.232433],\"accuracy\":5.0}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InboundMessageParser parser = new InboundMessageParser(objectMapper);
+    private final ByteBuffer binaryFrame = ByteBuffer.wrap(
+            BinaryLocationCodec.encode(0, new Position(19.840466, 75.232433, 5, 0)));
+
+    @Benchmark
+    public InboundMessage streaming() throws IOException {
+        return parser.parse(LOCATION_JSON);
+    }
+
+    @Benchmark
+    public JsonNode tree() throws IOException {
+        return objectMapper.readTree(LOCATION_JSON);
+    }
+
+    @Benchmark
+    public Position binary() {
+        return BinaryLocationCodec.decodePosition(binaryFrame, 0);
+    }
+}
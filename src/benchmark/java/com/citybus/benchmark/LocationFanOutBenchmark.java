@@ -0,0 +1,59 @@
+package com.citybus.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One driver fix from ingest to every subscriber: the location message, then
+ * the ingest tick that snaps it to the route, updates the ETA and runs
+ * {@code broadcastLocationUpdate}. Each operation publishes exactly one fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationFanOutBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int subscribers;
+
+    // Whether subscribers negotiated the binary location subprotocol
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private TrackingFixture fixture;
+    private StubSession driver;
+    private TextMessage[] fixes;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new TrackingFixture();
+        driver = fixture.connectDriver("driver1", "bus-1", false);
+        for (int i = 0; i < subscribers; i++) {
+            fixture.connectRider("rider" + i, "bus:bus-1", binary);
+        }
+
+        double[][] points = TrackingFixture.ROUTE_1_POINTS;
+        fixes = new TextMessage[points.length];
+        for (int i = 0; i < points.length; i++) {
+            fixes[i] = TrackingFixture.locationMessage(points[i]);
+        }
+    }
+
+    @Benchmark
+    public void publishFix() throws Exception {
+        TextMessage fix = fixes[next];
+        next = (next + 1) % fixes.length;
+        fixture.handler.handleMessage(driver, fix);
+        fixture.handler.flushLocationIngest();
+    }
+}
@@ -0,0 +1,90 @@
+package com.citybus.benchmark;
+
+import com.citybus.model.Position;
+import com.citybus.websocket.BinaryLocationCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code handleMessage} end to end for each inbound message type: parse,
+ * dispatch and the handler's work, with replies queued to stub sessions.
+ * Five buses are live so the snapshot replies carry real data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageDispatchBenchmark {
+
+    @Param({
+            "ping",
+            "driver-location",
+            "driver-location-binary",
+            "user-location",
+            "subscribe",
+            "track-bus",
+            "get-active-buses"
+    })
+    public String type;
+
+    private TrackingFixture fixture;
+    private WebSocketSession session;
+    private WebSocketMessage<?>[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new TrackingFixture();
+        StubSession driver = null;
+        for (int bus = 1; bus <= 5; bus++) {
+            StubSession connected = fixture.connectDriver("driver" + bus, "bus-" + bus, false);
+            fixture.handler.handleMessage(connected, TrackingFixture.locationMessage(TrackingFixture.ROUTE_1_POINTS[bus - 1]));
+            if (driver == null) driver = connected;
+        }
+        fixture.handler.flushLocationIngest();
+        StubSession rider = fixture.connectRider("rider", "all", false);
+
+        // Location types cycle through points far enough apart that ingest keeps every fix
+        double[][] points = TrackingFixture.ROUTE_1_POINTS;
+        messages = new WebSocketMessage<?>[points.length];
+        for (int i = 0; i < points.length; i++) {
+            messages[i] = message(points[i]);
+        }
+        session = type.startsWith("driver-") ? driver : rider;
+    }
+
+    private WebSocketMessage<?> message(double[] point) {
+        switch (type) {
+            case "driver-location":
+                return TrackingFixture.locationMessage(point);
+            case "driver-location-binary":
+                return new BinaryMessage(BinaryLocationCodec.encode(0, new Position(point[0], point[1], 5, 0)));
+            case "user-location":
+                return new TextMessage("{\"type\":\"user-location\",\"data\":{\"coords\":[" + point[0] + "," + point[1] + "]}}");
+            case "subscribe":
+                return new TextMessage("{\"type\":\"subscribe\",\"data\":{\"topics\":[\"route:1\",\"bus:bus-2\"]}}");
+            case "track-bus":
+                return new TextMessage("{\"type\":\"track-bus\",\"data\":{\"busId\":\"bus-1\"}}");
+            default:
+                return new TextMessage("{\"type\":\"" + type + "\"}");
+        }
+    }
+
+    @Benchmark
+    public void handleMessage() throws Exception {
+        WebSocketMessage<?> message = messages[next];
+        next = (next + 1) % messages.length;
+        fixture.handler.handleMessage(session, message);
+    }
+}
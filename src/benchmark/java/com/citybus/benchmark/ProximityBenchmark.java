@@ -0,0 +1,88 @@
+package com.citybus.benchmark;
+
+import com.citybus.model.Position;
+import com.citybus.model.RiderSession;
+import com.citybus.service.AssignmentRegistry;
+import com.citybus.service.BusTrackingService;
+import com.citybus.service.FleetRegistry;
+import com.citybus.service.RouteStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code checkProximityNotifications} for one bus fix, with riders spread
+ * over a 20 km square and each tracking one of the buses. Buses move to
+ * random points, so alerts keep firing and re-arming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProximityBenchmark {
+
+    private static final double CENTER_LAT = 19.84;
+    private static final double CENTER_LNG = 75.25;
+    private static final double SPAN_DEGREES = 0.18;
+    private static final int FIXES = 4096;
+
+    @Param({"1000", "50000"})
+    public int riders;
+
+    @Param({"500"})
+    public int buses;
+
+    private BusTrackingService busTrackingService;
+    private String[] busIds;
+    private double[][] fixes;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        RouteStore routeStore = new RouteStore("classpath:routes/routes.json", new DefaultResourceLoader(), event -> { });
+        routeStore.load();
+        busTrackingService = new BusTrackingService(new FleetRegistry(), routeStore, new AssignmentRegistry(routeStore, ""));
+
+        Random random = new Random(42);
+        busIds = new String[buses];
+        for (int i = 0; i < buses; i++) {
+            busIds[i] = "bus-" + i;
+        }
+        for (int i = 0; i < riders; i++) {
+            RiderSession rider = new RiderSession("s" + i, "rider" + i, 0);
+            busTrackingService.addUserConnection(rider);
+            busTrackingService.setUserTrackingBus(rider, busIds[random.nextInt(buses)]);
+            busTrackingService.updateUserLocation(rider, new Position(randomLat(random), randomLng(random), 10, 0));
+        }
+
+        fixes = new double[FIXES][];
+        for (int i = 0; i < FIXES; i++) {
+            fixes[i] = new double[] {randomLat(random), randomLng(random)};
+        }
+    }
+
+    private static double randomLat(Random random) {
+        return CENTER_LAT + (random.nextDouble() - 0.5) * SPAN_DEGREES;
+    }
+
+    private static double randomLng(Random random) {
+        return CENTER_LNG + (random.nextDouble() - 0.5) * SPAN_DEGREES;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> busFix() {
+        int i = next++;
+        double[] fix = fixes[i & (FIXES - 1)];
+        return busTrackingService.checkProximityNotifications(busIds[i % buses], fix[0], fix[1]);
+    }
+}
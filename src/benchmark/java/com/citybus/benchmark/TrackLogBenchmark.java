@@ -0,0 +1,93 @@
+package com.citybus.benchmark;
+
+import com.citybus.model.Position;
+import com.citybus.service.TrackLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Track log writes and reads on a temporary directory: appending fixes from
+ * 500 buses and flushing them into the mapped segment, and a one-minute
+ * history query for one bus. Appends are timed as single shots of a fixed
+ * size so a run writes a bounded amount to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackLogBenchmark {
+
+    private static final int BUSES = 500;
+    private static final int BATCH = 1000;
+    private static final int SHOT_BATCHES = 100;
+
+    private Path directory;
+    private TrackLog trackLog;
+    private String[] busIds;
+    private long clock;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tracklog-bench");
+        trackLog = new TrackLog(true, directory.toString(), 1 << 22, BATCH, 64, 7);
+        trackLog.open();
+
+        busIds = new String[BUSES];
+        for (int i = 0; i < BUSES; i++) {
+            busIds[i] = "bus-" + i;
+        }
+        // History for the read benchmark: one fix per bus every second for ten minutes
+        clock = System.currentTimeMillis() - 600_000;
+        for (int i = 0; i < 600 * BUSES / BATCH; i++) {
+            appendBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        trackLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void appendBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            int bus = i % BUSES;
+            trackLog.append(busIds[bus], new Position(19.84 + bus * 1e-4, 75.25 + i * 1e-6, 5, clock));
+            if (bus == BUSES - 1) {
+                clock += 1000;
+            }
+        }
+        trackLog.flush();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OperationsPerInvocation(BATCH * SHOT_BATCHES)
+    public void appendAndFlush() {
+        for (int i = 0; i < SHOT_BATCHES; i++) {
+            appendBatch();
+        }
+    }
+
+    @Benchmark
+    public List<Position> history() {
+        long to = clock;
+        return trackLog.history("bus-7", to - 60_000, to, 1000);
+    }
+}
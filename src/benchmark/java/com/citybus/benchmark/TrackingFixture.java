@@ -0,0 +1,95 @@
+package com.citybus.benchmark;
+
+import com.citybus.cluster.InMemoryFleetBus;
+import com.citybus.model.AuthPrincipal;
+import com.citybus.service.AssignmentRegistry;
+import com.citybus.service.AuthService;
+import com.citybus.service.BusTrackingService;
+import com.citybus.service.EtaService;
+import com.citybus.service.FleetRegistry;
+import com.citybus.service.GeofenceService;
+import com.citybus.service.RouteStore;
+import com.citybus.service.StopEventLog;
+import com.citybus.service.TrackLog;
+import com.citybus.service.TrackingMetrics;
+import com.citybus.websocket.AuthHandshakeInterceptor;
+import com.citybus.websocket.BusTrackingWebSocketHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+
+/**
+ * The WebSocket handler wired to its real services without a Spring context.
+ *
+ * Sends run inline on the calling thread and end in {@link StubSession}s, the
+ * track log is disabled and ingest suppresses nothing, so a benchmark
+ * measures dispatch, matching and fan-out rather than I/O or timer ticks.
+ */
+final class TrackingFixture {
+
+    // Points on route 1 from the bundled routes.json, far enough apart to pass ingest filtering
+    static final double[][] ROUTE_1_POINTS = {
+            {19.840466, 75.232433},
+            {19.845526, 75.240380},
+            {19.838546, 75.251527},
+            {19.847091, 75.265890},
+            {19.832842, 75.270292}
+    };
+
+    final AuthService authService = new AuthService();
+    final FleetRegistry fleetRegistry = new FleetRegistry();
+    final BusTrackingService busTrackingService;
+    final BusTrackingWebSocketHandler handler;
+    private int nextSessionId;
+
+    TrackingFixture() throws IOException {
+        RouteStore routeStore = new RouteStore("classpath:routes/routes.json", new DefaultResourceLoader(), event -> { });
+        routeStore.load();
+        AssignmentRegistry assignments = new AssignmentRegistry(routeStore, "bus-1:1,bus-2:2");
+        busTrackingService = new BusTrackingService(fleetRegistry, routeStore, assignments);
+        busTrackingService.initRoutes();
+
+        handler = new BusTrackingWebSocketHandler(
+                busTrackingService,
+                authService,
+                new EtaService(busTrackingService),
+                new GeofenceService(busTrackingService, 30, 45),
+                new TrackLog(false, "", 0, 0, 0, 0),
+                new StopEventLog(false, "", 0),
+                new TrackingMetrics(new SimpleMeterRegistry(), fleetRegistry),
+                new InMemoryFleetBus("benchmark", new InMemoryFleetBus.Hub()),
+                Runnable::run,
+                64, 10_000, 30,
+                0, 25, false,
+                600, 100);
+        handler.joinFleetBus();
+    }
+
+    StubSession connect(boolean binary) throws Exception {
+        StubSession session = new StubSession("s" + nextSessionId++, binary);
+        handler.afterConnectionEstablished(session);
+        return session;
+    }
+
+    // A connected, registered driver whose handshake carried a valid token
+    StubSession connectDriver(String username, String busId, boolean binary) throws Exception {
+        StubSession session = connect(binary);
+        AuthPrincipal principal = authService.authenticate(authService.generateToken(1L, username, "driver", busId));
+        session.getAttributes().put(AuthHandshakeInterceptor.PRINCIPAL_ATTRIBUTE, principal);
+        handler.handleMessage(session, new TextMessage("{\"type\":\"driver-register\",\"data\":{}}"));
+        return session;
+    }
+
+    StubSession connectRider(String userId, String topic, boolean binary) throws Exception {
+        StubSession session = connect(binary);
+        handler.handleMessage(session, new TextMessage(
+                "{\"type\":\"user-register\",\"data\":{\"userId\":\"" + userId + "\",\"subscriptions\":[\"" + topic + "\"]}}"));
+        return session;
+    }
+
+    static TextMessage locationMessage(double[] point) {
+        return new TextMessage("{\"type\":\"driver-location\",\"data\":{\"coords\":[" + point[0] + "," + point[1] + "],\"accuracy\":5}}");
+    }
+}
@@ -0,0 +1,62 @@
+package com.citybus.benchmark.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Reads server-side meters from {@code /actuator/metrics}. A meter that does
+ * not exist yet (nothing recorded under that tag so far) reads as zero.
+ */
+final class ActuatorClient {
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    ActuatorClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    boolean isUp() {
+        try {
+            HttpResponse<String> response = get("/actuator/health");
+            return response.statusCode() == 200 && response.body().contains("\"UP\"");
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // statistic is one of Micrometer's COUNT, TOTAL_TIME, MAX or VALUE; tag is "key:value" or null
+    double read(String metric, String tag, String statistic) {
+        try {
+            HttpResponse<String> response = get("/actuator/metrics/" + metric + (tag != null ? "?tag=" + tag : ""));
+            if (response.statusCode() != 200) return 0;
+            for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+                if (statistic.equals(measurement.path("statistic").asText())) {
+                    return measurement.path("value").asDouble();
+                }
+            }
+            return 0;
+        } catch (IOException e) {
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(5)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,60 @@
+package com.citybus.benchmark.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Millisecond latency histogram with one bucket per millisecond up to a
+ * minute, recorded from any number of threads without locking.
+ */
+final class LatencyHistogram {
+
+    private static final int MAX_MS = 60_000;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAX_MS + 1);
+
+    void record(long millis) {
+        counts.incrementAndGet((int) Math.max(0, Math.min(MAX_MS, millis)));
+    }
+
+    void reset() {
+        for (int i = 0; i <= MAX_MS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    Map<String, Object> summary() {
+        long[] snapshot = new long[MAX_MS + 1];
+        long total = 0;
+        long sum = 0;
+        long max = 0;
+        for (int i = 0; i <= MAX_MS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+            sum += snapshot[i] * i;
+            if (snapshot[i] > 0) max = i;
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total);
+        summary.put("meanMs", total > 0 ? Math.round(10.0 * sum / total) / 10.0 : 0);
+        summary.put("p50Ms", percentile(snapshot, total, 0.50));
+        summary.put("p90Ms", percentile(snapshot, total, 0.90));
+        summary.put("p99Ms", percentile(snapshot, total, 0.99));
+        summary.put("p999Ms", percentile(snapshot, total, 0.999));
+        summary.put("maxMs", max);
+        return summary;
+    }
+
+    private static long percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return i;
+        }
+        return MAX_MS;
+    }
+}
@@ -0,0 +1,405 @@
+package com.citybus.benchmark.load;
+
+import com.citybus.model.Route;
+import com.citybus.service.AuthService;
+import com.citybus.service.RouteStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Headless end-to-end load test.
+ *
+ * Starts the application in a child JVM (or targets a running one with
+ * {@code --url}), connects N simulated drivers that drive along the route
+ * polylines and M riders that each track one of their buses, and after a
+ * warmup measures for a fixed duration. The report combines the client view
+ * (ingest rate, delivered updates, fan-out latency percentiles) with the
+ * server's own meters read from Actuator (handled messages, dropped frames,
+ * send failures, heap and GC), and is printed and written as JSON.
+ *
+ * Run through the benchmark profile:
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec@loadgen -Dloadgen.args="--drivers 200 --riders 5000"
+ * </pre>
+ *
+ * Options (defaults in brackets): --drivers [50], --riders [500],
+ * --rate driver fixes per second [1], --rider-rate rider locations per
+ * second [0.1], --speed bus speed in m/s [12], --warmup seconds [10],
+ * --duration seconds [60], --port [18081], --url of a running server
+ * instead of starting one, --app-args extra application arguments such as
+ * "--citybus.executor.mode=virtual", --app-jvm-args ["-Xmx1g"],
+ * --clients HTTP clients sharing the sockets [2],
+ * --report [target/loadgen-report.json], --app-log [target/loadgen-app.log].
+ */
+public final class LoadGenerator {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("drivers", "50");
+        DEFAULTS.put("riders", "500");
+        DEFAULTS.put("rate", "1");
+        DEFAULTS.put("rider-rate", "0.1");
+        DEFAULTS.put("speed", "12");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("port", "18081");
+        DEFAULTS.put("url", "");
+        DEFAULTS.put("app-args", "");
+        DEFAULTS.put("app-jvm-args", "-Xmx1g");
+        DEFAULTS.put("clients", "2");
+        DEFAULTS.put("report", "target/loadgen-report.json");
+        DEFAULTS.put("app-log", "target/loadgen-app.log");
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+    private static final int CONNECT_BATCH = 200;
+
+    private final Map<String, String> options;
+    private final LoadStats stats = new LoadStats();
+    private final List<SimulatedDriver> drivers = new ArrayList<>();
+    private final List<SimulatedRider> riders = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private Process app;
+    private Path appDataDirectory;
+    private double maxHeapBytes;
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+            Thread thread = new Thread(runnable, "loadgen-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String key = args[i].replaceFirst("^--", "");
+            if (!DEFAULTS.containsKey(key)) {
+                System.err.println("Unknown option " + args[i] + "; known: " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            options.put(key, args[i + 1]);
+        }
+
+        LoadGenerator generator = new LoadGenerator(options);
+        try {
+            generator.run();
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    private int intOption(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private double doubleOption(String key) {
+        return Double.parseDouble(options.get(key));
+    }
+
+    private void run() throws Exception {
+        String baseUrl = options.get("url").isEmpty() ? startApp() : options.get("url").replaceAll("/$", "");
+        ActuatorClient actuator = new ActuatorClient(baseUrl);
+        if (!awaitUp(actuator, 120)) {
+            throw new IllegalStateException("Server at " + baseUrl + " did not report UP; see " + options.get("app-log"));
+        }
+
+        List<String> routeIds = new ArrayList<>();
+        List<RoutePath> paths = new ArrayList<>();
+        loadRoutes(routeIds, paths);
+
+        URI webSocketUri = URI.create(baseUrl.replaceFirst("^http", "ws") + "/websocket");
+        connectSessions(webSocketUri, routeIds, paths);
+        startTicks();
+
+        System.out.println("Warming up for " + options.get("warmup") + " s");
+        progressFor(intOption("warmup") * 1000L, actuator);
+        stats.reset();
+        maxHeapBytes = 0;
+        Map<String, Double> before = serverSnapshot(actuator);
+        long start = System.currentTimeMillis();
+
+        System.out.println("Measuring for " + options.get("duration") + " s");
+        progressFor(intOption("duration") * 1000L, actuator);
+        Map<String, Double> after = serverSnapshot(actuator);
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+
+        scheduler.shutdownNow();
+        writeReport(seconds, before, after);
+    }
+
+    // Child JVM on this classpath, with its own data directory and quiet logging
+    private String startApp() throws IOException {
+        int port = intOption("port");
+        appDataDirectory = Files.createTempDirectory("citybus-loadgen");
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(split(options.get("app-jvm-args")));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.citybus.CityBusTrackerApplication");
+
+        List<String> appArgs = split(options.get("app-args"));
+        Map<String, String> fixed = new LinkedHashMap<>();
+        fixed.put("server.port", String.valueOf(port));
+        fixed.put("citybus.tracklog.directory", appDataDirectory.resolve("tracks").toString());
+        fixed.put("citybus.fleet-snapshot.file", appDataDirectory.resolve("fleet-snapshot.bin").toString());
+        fixed.put("logging.level.com.citybus", "INFO");
+        fixed.put("logging.level.org.springframework.web.socket", "INFO");
+        fixed.put("logging.level.org.springframework.security", "INFO");
+        for (Map.Entry<String, String> entry : fixed.entrySet()) {
+            // Anything given in --app-args wins over these
+            boolean overridden = appArgs.stream().anyMatch(arg -> arg.startsWith("--" + entry.getKey() + "="));
+            if (!overridden) {
+                command.add("--" + entry.getKey() + "=" + entry.getValue());
+            }
+        }
+        command.addAll(appArgs);
+
+        File log = new File(options.get("app-log"));
+        if (log.getParentFile() != null) {
+            log.getParentFile().mkdirs();
+        }
+        System.out.println("Starting application on port " + port + ", log in " + log);
+        app = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        return "http://localhost:" + port;
+    }
+
+    private boolean awaitUp(ActuatorClient actuator, int timeoutSeconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            if (app != null && !app.isAlive()) return false;
+            if (actuator.isUp()) return true;
+            Thread.sleep(500);
+        }
+        return false;
+    }
+
+    // The same routes the server loads, read from the classpath
+    private void loadRoutes(List<String> routeIds, List<RoutePath> paths) throws IOException {
+        RouteStore routeStore = new RouteStore("classpath:routes/routes.json", new DefaultResourceLoader(), event -> { });
+        routeStore.load();
+        for (Map.Entry<String, Route> route : routeStore.getRoutes().entrySet()) {
+            if (route.getValue().getPath() != null && route.getValue().getPath().size() >= 2) {
+                routeIds.add(route.getKey());
+                paths.add(new RoutePath(route.getValue().getPath()));
+            }
+        }
+        if (routeIds.isEmpty()) {
+            throw new IllegalStateException("No routes with a path to drive along");
+        }
+    }
+
+    private void connectSessions(URI webSocketUri, List<String> routeIds, List<RoutePath> paths) {
+        HttpClient[] clients = new HttpClient[Math.max(1, intOption("clients"))];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = HttpClient.newHttpClient();
+        }
+
+        // Drivers authenticate with tokens signed like the server's own; each drives its own bus
+        AuthService tokens = new AuthService();
+        Random random = new Random(7);
+        int driverCount = intOption("drivers");
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (int i = 0; i < driverCount; i++) {
+            int route = i % routeIds.size();
+            RoutePath path = paths.get(route);
+            String busId = "load-bus-" + i;
+            SimulatedDriver driver = new SimulatedDriver(stats, busId, routeIds.get(route), path,
+                    doubleOption("speed"), random.nextDouble() * 2 * path.getLengthMeters());
+            String token = tokens.generateToken((long) i, "load-driver-" + i, "driver", busId);
+            URI uri = URI.create(webSocketUri + "?token=" + URLEncoder.encode(token, StandardCharsets.UTF_8));
+            pending.add(driver.connect(clients[i % clients.length], uri).thenRun(driver::register));
+            drivers.add(driver);
+            awaitBatch(pending, i + 1 == driverCount);
+        }
+        System.out.println("Connected " + drivers.size() + " drivers");
+
+        int riderCount = intOption("riders");
+        for (int i = 0; i < riderCount && !drivers.isEmpty(); i++) {
+            int bus = random.nextInt(drivers.size());
+            SimulatedRider rider = new SimulatedRider(stats, "load-rider-" + i, drivers.get(bus).getBusId(),
+                    paths.get(bus % routeIds.size()));
+            pending.add(rider.connect(clients[i % clients.length], webSocketUri).thenRun(() -> {
+                rider.register();
+                rider.trackBus();
+            }));
+            riders.add(rider);
+            awaitBatch(pending, i + 1 == riderCount);
+        }
+        System.out.println("Connected " + riders.size() + " riders");
+    }
+
+    // Connects in batches so the server's accept queue is not flooded at once
+    private static void awaitBatch(List<CompletableFuture<?>> pending, boolean last) {
+        if (pending.size() < CONNECT_BATCH && !last) return;
+        for (CompletableFuture<?> future : pending) {
+            try {
+                future.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        }
+        pending.clear();
+    }
+
+    // Each session ticks on its own period with a random phase, so sends are spread evenly
+    private void startTicks() {
+        Random random = new Random(11);
+        long driverPeriodMicros = Math.max(1, Math.round(1_000_000 / doubleOption("rate")));
+        for (SimulatedDriver driver : drivers) {
+            scheduler.scheduleAtFixedRate(driver::tick, (long) (random.nextDouble() * driverPeriodMicros),
+                    driverPeriodMicros, TimeUnit.MICROSECONDS);
+        }
+        double riderRate = doubleOption("rider-rate");
+        if (riderRate > 0) {
+            long riderPeriodMicros = Math.max(1, Math.round(1_000_000 / riderRate));
+            for (SimulatedRider rider : riders) {
+                scheduler.scheduleAtFixedRate(rider::tick, (long) (random.nextDouble() * riderPeriodMicros),
+                        riderPeriodMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+    }
+
+    private void progressFor(long millis, ActuatorClient actuator) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        long lastSent = stats.locationsSent.sum();
+        long lastUpdates = stats.busUpdates.sum();
+        while (System.currentTimeMillis() < end) {
+            long wait = Math.min(PROGRESS_INTERVAL_MS, end - System.currentTimeMillis());
+            Thread.sleep(Math.max(0, wait));
+
+            double heap = actuator.read("jvm.memory.used", "area:heap", "VALUE");
+            maxHeapBytes = Math.max(maxHeapBytes, heap);
+            long sent = stats.locationsSent.sum();
+            long updates = stats.busUpdates.sum();
+            System.out.printf("  fixes %.0f/s, updates %.0f/s, p99 %s ms, skipped %d, heap %.0f MB%n",
+                    (sent - lastSent) * 1000.0 / Math.max(1, wait), (updates - lastUpdates) * 1000.0 / Math.max(1, wait),
+                    stats.fanOutLatency.summary().get("p99Ms"), stats.sendsSkipped.sum(), heap / (1024 * 1024));
+            lastSent = sent;
+            lastUpdates = updates;
+        }
+    }
+
+    private static Map<String, Double> serverSnapshot(ActuatorClient actuator) {
+        Map<String, Double> snapshot = new LinkedHashMap<>();
+        snapshot.put("driverLocations", actuator.read("citybus.ws.messages", "type:driver-location", "COUNT"));
+        snapshot.put("handlingSeconds", actuator.read("citybus.ws.messages", "type:driver-location", "TOTAL_TIME"));
+        snapshot.put("framesDropped", actuator.read("citybus.ws.frames.dropped", null, "COUNT"));
+        snapshot.put("sendFailures", actuator.read("citybus.ws.send.failures", null, "COUNT"));
+        snapshot.put("propagationCount", actuator.read("citybus.location.propagation", null, "COUNT"));
+        snapshot.put("propagationSeconds", actuator.read("citybus.location.propagation", null, "TOTAL_TIME"));
+        snapshot.put("propagationMaxSeconds", actuator.read("citybus.location.propagation", null, "MAX"));
+        snapshot.put("gcPauses", actuator.read("jvm.gc.pause", null, "COUNT"));
+        snapshot.put("gcPauseSeconds", actuator.read("jvm.gc.pause", null, "TOTAL_TIME"));
+        snapshot.put("gcPauseMaxSeconds", actuator.read("jvm.gc.pause", null, "MAX"));
+        snapshot.put("heapUsed", actuator.read("jvm.memory.used", "area:heap", "VALUE"));
+        snapshot.put("heapMax", actuator.read("jvm.memory.max", "area:heap", "VALUE"));
+        snapshot.put("liveThreads", actuator.read("jvm.threads.live", null, "VALUE"));
+        snapshot.put("activeDrivers", actuator.read("citybus.drivers.active", null, "VALUE"));
+        snapshot.put("activeRiders", actuator.read("citybus.riders.active", null, "VALUE"));
+        return snapshot;
+    }
+
+    private void writeReport(double seconds, Map<String, Double> before, Map<String, Double> after) throws IOException {
+        Map<String, Object> config = new LinkedHashMap<>(options);
+        config.put("measuredSeconds", Math.round(seconds * 10) / 10.0);
+
+        double handled = after.get("driverLocations") - before.get("driverLocations");
+        double propagated = after.get("propagationCount") - before.get("propagationCount");
+        double gcPauses = after.get("gcPauses") - before.get("gcPauses");
+        Map<String, Object> server = new LinkedHashMap<>();
+        server.put("driverLocationsHandled", (long) handled);
+        server.put("driverLocationsPerSecond", LoadStats.rate(handled, seconds));
+        server.put("meanHandlingMicros", handled > 0
+                ? Math.round(1e6 * (after.get("handlingSeconds") - before.get("handlingSeconds")) / handled) : 0);
+        server.put("framesDropped", (long) (after.get("framesDropped") - before.get("framesDropped")));
+        server.put("sendFailures", (long) (after.get("sendFailures") - before.get("sendFailures")));
+        server.put("meanPropagationMs", propagated > 0
+                ? Math.round(1e3 * (after.get("propagationSeconds") - before.get("propagationSeconds")) / propagated) : 0);
+        // Micrometer's max decays over a short window, so this is the recent maximum
+        server.put("recentMaxPropagationMs", Math.round(1e3 * after.get("propagationMaxSeconds")));
+        server.put("gcPauses", (long) gcPauses);
+        server.put("gcPauseTotalMs", Math.round(1e3 * (after.get("gcPauseSeconds") - before.get("gcPauseSeconds"))));
+        server.put("recentMaxGcPauseMs", Math.round(1e3 * after.get("gcPauseMaxSeconds")));
+        server.put("maxHeapUsedMb", Math.round(Math.max(maxHeapBytes, after.get("heapUsed")) / (1024 * 1024)));
+        server.put("heapMaxMb", Math.round(after.get("heapMax") / (1024 * 1024)));
+        server.put("liveThreads", after.get("liveThreads").longValue());
+        server.put("activeDrivers", after.get("activeDrivers").longValue());
+        server.put("activeRiders", after.get("activeRiders").longValue());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.put("client", stats.toReport(seconds));
+        report.put("server", server);
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        String json = objectMapper.writeValueAsString(report);
+        System.out.println(json);
+        File file = new File(options.get("report"));
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Files.writeString(file.toPath(), json);
+        System.out.println("Report written to " + file);
+    }
+
+    private void shutdown() {
+        scheduler.shutdownNow();
+        for (SimulatedDriver driver : drivers) {
+            driver.close();
+        }
+        for (SimulatedRider rider : riders) {
+            rider.close();
+        }
+        if (app != null) {
+            app.destroy();
+            try {
+                if (!app.waitFor(30, TimeUnit.SECONDS)) {
+                    app.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                app.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (appDataDirectory != null) {
+            try (Stream<Path> files = Files.walk(appDataDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                System.err.println("Could not remove " + appDataDirectory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static List<String> split(String args) {
+        return args.isBlank() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(args.trim().split("\\s+")));
+    }
+}
@@ -0,0 +1,54 @@
+package com.citybus.benchmark.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side counters shared by every simulated session. Reset once the
+ * warmup ends so the report covers only the measured window.
+ */
+final class LoadStats {
+
+    final LongAdder locationsSent = new LongAdder();
+    final LongAdder riderLocationsSent = new LongAdder();
+    // Ticks skipped because the session's previous send had not completed yet
+    final LongAdder sendsSkipped = new LongAdder();
+    final LongAdder acks = new LongAdder();
+    final LongAdder busUpdates = new LongAdder();
+    final LongAdder driverFrames = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder closedSessions = new LongAdder();
+    final LatencyHistogram fanOutLatency = new LatencyHistogram();
+
+    void reset() {
+        locationsSent.reset();
+        riderLocationsSent.reset();
+        sendsSkipped.reset();
+        acks.reset();
+        busUpdates.reset();
+        driverFrames.reset();
+        errors.reset();
+        fanOutLatency.reset();
+    }
+
+    Map<String, Object> toReport(double seconds) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("driverLocationsSent", locationsSent.sum());
+        report.put("driverLocationsPerSecond", rate(locationsSent.sum(), seconds));
+        report.put("riderLocationsSent", riderLocationsSent.sum());
+        report.put("sendsSkipped", sendsSkipped.sum());
+        report.put("acksReceived", acks.sum());
+        report.put("busUpdatesReceived", busUpdates.sum());
+        report.put("busUpdatesPerSecond", rate(busUpdates.sum(), seconds));
+        report.put("driverFramesReceived", driverFrames.sum());
+        report.put("errorsReceived", errors.sum());
+        report.put("closedSessions", closedSessions.sum());
+        report.put("fanOutLatency", fanOutLatency.summary());
+        return report;
+    }
+
+    static double rate(double count, double seconds) {
+        return seconds > 0 ? Math.round(10 * count / seconds) / 10.0 : 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.citybus.benchmark.load;
+
+import com.citybus.util.DistanceCalculator;
+
+import java.util.List;
+
+/**
+ * A route polyline walked at constant speed, turning round at each end, so a
+ * simulated bus can ask where it is after any number of meters.
+ */
+final class RoutePath {
+
+    private final double[][] points;
+    private final double[] cumulativeMeters;
+    private final double lengthMeters;
+
+    RoutePath(List<double[]> path) {
+        points = path.toArray(new double[0][]);
+        cumulativeMeters = new double[points.length];
+        for (int i = 1; i < points.length; i++) {
+            cumulativeMeters[i] = cumulativeMeters[i - 1] + 1000 * DistanceCalculator.getDistanceFromLatLonInKm(
+                    points[i - 1][0], points[i - 1][1], points[i][0], points[i][1]);
+        }
+        lengthMeters = cumulativeMeters[points.length - 1];
+    }
+
+    double getLengthMeters() {
+        return lengthMeters;
+    }
+
+    // Position after travelling the given distance from the first point, going back and forth
+    double[] pointAt(double meters) {
+        if (points.length == 1 || lengthMeters == 0) {
+            return points[0];
+        }
+        double lap = meters % (2 * lengthMeters);
+        double along = lap <= lengthMeters ? lap : 2 * lengthMeters - lap;
+
+        int segment = 1;
+        while (segment < points.length - 1 && cumulativeMeters[segment] < along) {
+            segment++;
+        }
+        double start = cumulativeMeters[segment - 1];
+        double span = cumulativeMeters[segment] - start;
+        double t = span > 0 ? (along - start) / span : 0;
+        double[] from = points[segment - 1];
+        double[] to = points[segment];
+        return new double[] {from[0] + t * (to[0] - from[0]), from[1] + t * (to[1] - from[1])};
+    }
+}
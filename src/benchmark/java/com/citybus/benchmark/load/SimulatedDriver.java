@@ -0,0 +1,52 @@
+package com.citybus.benchmark.load;
+
+/**
+ * A driver driving its bus along a route polyline at constant speed and
+ * reporting a fix on every tick.
+ */
+final class SimulatedDriver extends SimulatedSession {
+
+    private final String busId;
+    private final String routeId;
+    private final RoutePath path;
+    private final double speedMps;
+    private final double startMeters;
+    private final long startTime = System.currentTimeMillis();
+
+    SimulatedDriver(LoadStats stats, String busId, String routeId, RoutePath path, double speedMps, double startMeters) {
+        super(stats);
+        this.busId = busId;
+        this.routeId = routeId;
+        this.path = path;
+        this.speedMps = speedMps;
+        this.startMeters = startMeters;
+    }
+
+    String getBusId() {
+        return busId;
+    }
+
+    // The token on the handshake names the bus; registering puts it on its route
+    void register() {
+        sendInOrder("{\"type\":\"driver-register\",\"data\":{\"routeId\":\"" + routeId + "\"}}");
+    }
+
+    void tick() {
+        double travelled = startMeters + speedMps * (System.currentTimeMillis() - startTime) / 1000.0;
+        double[] point = path.pointAt(travelled);
+        if (send("{\"type\":\"driver-location\",\"data\":{\"coords\":[" + point[0] + "," + point[1] + "],\"accuracy\":5}}")) {
+            stats.locationsSent.increment();
+        }
+    }
+
+    @Override
+    protected void onMessage(String text, long receivedAt) {
+        if (hasType(text, "location-acknowledged")) {
+            stats.acks.increment();
+        } else if (hasType(text, "driver-location-update")) {
+            stats.driverFrames.increment();
+        } else if (hasType(text, "error")) {
+            stats.errors.increment();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.citybus.benchmark.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A rider standing somewhere along a route and tracking one bus on it.
+ *
+ * Every bus-location-update carries the server's ingest time of the fix, so
+ * the difference to the arrival time here is the driver-to-rider latency.
+ * The generator and the server share one clock on a single box.
+ */
+final class SimulatedRider extends SimulatedSession {
+
+    private final String userId;
+    private final String busId;
+    private final RoutePath path;
+
+    SimulatedRider(LoadStats stats, String userId, String busId, RoutePath path) {
+        super(stats);
+        this.userId = userId;
+        this.busId = busId;
+        this.path = path;
+    }
+
+    void register() {
+        sendInOrder("{\"type\":\"user-register\",\"data\":{\"userId\":\"" + userId + "\",\"subscriptions\":[\"bus:" + busId + "\"]}}");
+    }
+
+    void trackBus() {
+        sendInOrder("{\"type\":\"track-bus\",\"data\":{\"busId\":\"" + busId + "\"}}");
+    }
+
+    void tick() {
+        double[] point = path.pointAt(ThreadLocalRandom.current().nextDouble() * path.getLengthMeters());
+        if (send("{\"type\":\"user-location\",\"data\":{\"coords\":[" + point[0] + "," + point[1] + "]}}")) {
+            stats.riderLocationsSent.increment();
+        }
+    }
+
+    @Override
+    protected void onMessage(String text, long receivedAt) {
+        if (hasType(text, "bus-location-update")) {
+            stats.busUpdates.increment();
+            long ingestedAt = readLong(text, "timestamp");
+            if (ingestedAt > 0) {
+                stats.fanOutLatency.record(receivedAt - ingestedAt);
+            }
+        } else if (hasType(text, "error")) {
+            stats.errors.increment();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.citybus.benchmark.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * One simulated client connection. Sends never queue up on the client: a
+ * tick that finds the previous send still in flight is skipped and counted,
+ * so a server that stops reading shows up as skipped sends rather than as
+ * unbounded client memory.
+ */
+abstract class SimulatedSession implements WebSocket.Listener {
+
+    protected final LoadStats stats;
+    private final StringBuilder partial = new StringBuilder();
+    private volatile WebSocket socket;
+    private CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+
+    SimulatedSession(LoadStats stats) {
+        this.stats = stats;
+    }
+
+    CompletableFuture<WebSocket> connect(HttpClient client, URI uri) {
+        return client.newWebSocketBuilder().buildAsync(uri, this).thenApply(webSocket -> {
+            socket = webSocket;
+            return webSocket;
+        });
+    }
+
+    // Control messages are never skipped: they go out after whatever is in flight
+    synchronized void sendInOrder(String text) {
+        WebSocket current = socket;
+        if (current == null) return;
+        lastSend = lastSend.thenCompose(previous -> current.sendText(text, true));
+    }
+
+    synchronized boolean send(String text) {
+        WebSocket current = socket;
+        if (current == null || current.isOutputClosed()) return false;
+        if (!lastSend.isDone()) {
+            stats.sendsSkipped.increment();
+            return false;
+        }
+        lastSend = current.sendText(text, true);
+        return true;
+    }
+
+    void close() {
+        WebSocket current = socket;
+        if (current != null && !current.isOutputClosed()) {
+            current.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+    }
+
+    // Called with each complete text message and the client time it arrived
+    protected abstract void onMessage(String text, long receivedAt);
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        socket = webSocket;
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        long receivedAt = System.currentTimeMillis();
+        if (last && partial.length() == 0) {
+            onMessage(data.toString(), receivedAt);
+        } else {
+            partial.append(data);
+            if (last) {
+                onMessage(partial.toString(), receivedAt);
+                partial.setLength(0);
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        stats.closedSessions.increment();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.closedSessions.increment();
+    }
+
+    static boolean hasType(String message, String type) {
+        // The server writes "type" first in every envelope
+        return message.startsWith("{\"type\":\"" + type + "\"");
+    }
+
+    // Reads the first value of a numeric field without parsing the whole message
+    static long readLong(String message, String field) {
+        String key = "\"" + field + "\":";
+        int start = message.indexOf(key);
+        if (start < 0) return -1;
+        int i = start + key.length();
+        long value = 0;
+        boolean digits = false;
+        while (i < message.length() && Character.isDigit(message.charAt(i))) {
+            value = value * 10 + (message.charAt(i++) - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+}
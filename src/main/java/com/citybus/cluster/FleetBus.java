@@ -0,0 +1,36 @@
+package com.citybus.cluster;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Message bus connecting the nodes of a cluster, so a driver connected to one
+ * node reaches riders connected to another.
+ *
+ * Each node publishes the location updates, ETAs and driver membership changes
+ * of its own drivers, and subscribes to the topics its local sessions need:
+ * the same {@code all}, {@code route:<id>} and {@code bus:<id>} topics riders
+ * use, plus {@link FleetEvent#MEMBERSHIP_TOPIC}. An event reaches every other
+ * node subscribed to a topic it matches, never the node that published it.
+ *
+ * Implementations only need topic-based publish/subscribe, so a broker such as
+ * Redis pub/sub can be plugged in by mapping topics onto channels.
+ */
+public interface FleetBus {
+
+    String getNodeId();
+
+    // Must not block the caller on I/O; implementations queue or drop
+    void publish(FleetEvent event);
+
+    void subscribe(String topic);
+
+    void unsubscribe(String topic);
+
+    // Receives events published by other nodes, on a bus thread
+    void setListener(Consumer<FleetEvent> listener);
+
+    Map<String, Object> getStats();
+
+    void close();
+}
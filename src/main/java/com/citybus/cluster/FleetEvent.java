@@ -0,0 +1,100 @@
+package com.citybus.cluster;
+
+import com.citybus.websocket.SubscriptionIndex;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One update sent between nodes. Location, ETA and stop events are routed by
+ * bus and route like rider subscriptions; driver membership events go to
+ * every node through {@link #MEMBERSHIP_TOPIC}. The payload is the same map
+ * the originating node sends to its own clients, and is never modified once
+ * published.
+ */
+public final class FleetEvent {
+
+    public static final String LOCATION = "location";
+    public static final String ETA = "eta";
+    // Stop events use the rider message types as-is
+    public static final String STOP_ARRIVED = "bus-arrived";
+    public static final String STOP_DEPARTED = "bus-departed";
+    public static final String DRIVER_STATE = "driver-state";
+    public static final String DRIVER_LEFT = "driver-left";
+
+    public static final String MEMBERSHIP_TOPIC = "fleet";
+
+    private final String type;
+    private final String origin;
+    private final String busId;
+    private final String routeId;
+    private final Map<String, Object> data;
+
+    @JsonCreator
+    public FleetEvent(@JsonProperty("type") String type,
+                      @JsonProperty("origin") String origin,
+                      @JsonProperty("busId") String busId,
+                      @JsonProperty("routeId") String routeId,
+                      @JsonProperty("data") Map<String, Object> data) {
+        this.type = type;
+        this.origin = origin;
+        this.busId = busId;
+        this.routeId = routeId;
+        this.data = data != null ? data : Collections.emptyMap();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    // Node id of the publisher
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    @JsonIgnore
+    public boolean isMembership() {
+        return DRIVER_STATE.equals(type) || DRIVER_LEFT.equals(type);
+    }
+
+    // Whether a node subscribed to these topics wants this event
+    public boolean matches(Set<String> topics) {
+        if (isMembership()) {
+            return topics.contains(MEMBERSHIP_TOPIC);
+        }
+        return topics.contains(SubscriptionIndex.ALL)
+                || (busId != null && topics.contains(SubscriptionIndex.busTopic(busId)))
+                || (routeId != null && topics.contains(SubscriptionIndex.routeTopic(routeId)));
+    }
+
+    // Coordinates from the payload, which is a double[] in process and a list once decoded from JSON
+    @JsonIgnore
+    public double[] getCoords() {
+        Object coords = data.get("coords");
+        if (coords instanceof double[]) {
+            return (double[]) coords;
+        }
+        if (coords instanceof List && ((List<?>) coords).size() >= 2) {
+            List<?> list = (List<?>) coords;
+            return new double[] { ((Number) list.get(0)).doubleValue(), ((Number) list.get(1)).doubleValue() };
+        }
+        return null;
+    }
+}
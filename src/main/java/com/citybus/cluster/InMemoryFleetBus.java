@@ -0,0 +1,110 @@
+package com.citybus.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fleet bus between nodes in the same JVM, all attached to one {@link Hub}.
+ * A single node on its own hub is the default, non-clustered setup: publishing
+ * then finds no other node and costs one list scan. Several nodes sharing a
+ * hub are a cluster without any network, for trying multi-node behaviour on
+ * one machine.
+ *
+ * Each node receives events on its own single thread, in publish order.
+ */
+public class InMemoryFleetBus implements FleetBus {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryFleetBus.class);
+
+    public static final class Hub {
+        private final CopyOnWriteArrayList<InMemoryFleetBus> nodes = new CopyOnWriteArrayList<>();
+    }
+
+    private final String nodeId;
+    private final Hub hub;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private final ExecutorService delivery;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private volatile Consumer<FleetEvent> listener = event -> { };
+
+    public InMemoryFleetBus(String nodeId, Hub hub) {
+        this.nodeId = nodeId;
+        this.hub = hub;
+        this.delivery = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fleet-bus-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        hub.nodes.add(this);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(FleetEvent event) {
+        published.incrementAndGet();
+        for (InMemoryFleetBus node : hub.nodes) {
+            if (node != this && event.matches(node.topics)) {
+                node.deliver(event);
+            }
+        }
+    }
+
+    private void deliver(FleetEvent event) {
+        received.incrementAndGet();
+        delivery.execute(() -> {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.error("Error handling fleet event on node {}: {}", nodeId, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(String topic) {
+        topics.add(topic);
+    }
+
+    @Override
+    public void unsubscribe(String topic) {
+        topics.remove(topic);
+    }
+
+    @Override
+    public void setListener(Consumer<FleetEvent> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("mode", "memory");
+        stats.put("nodes", hub.nodes.size());
+        stats.put("topics", topics.size());
+        stats.put("published", published.get());
+        stats.put("received", received.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        hub.nodes.remove(this);
+        delivery.shutdown();
+    }
+}
@@ -0,0 +1,393 @@
+package com.citybus.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fleet bus over plain TCP between a fixed set of peers, with no broker.
+ *
+ * Every node listens on a port and keeps one outgoing connection to each
+ * configured peer, reconnecting when it drops; every node must list every
+ * other node. A node sends its events only on its outgoing connections, and
+ * the peer on the other end replies on the same connection with the topics it
+ * subscribes to, so an event is written only to peers that want it. Incoming
+ * connections carry the peer's events in and this node's subscriptions out.
+ *
+ * Messages are JSON lines. An event is encoded once per publish and queued on
+ * each interested connection, whose own thread does the socket write, so a
+ * slow peer never blocks the publisher; a full queue drops the event.
+ * Subscription changes are queued the same way on incoming connections, but
+ * since a lost one would leave the peer out of step, a full queue drops the
+ * connection instead and the peer gets the whole topic list on reconnect.
+ */
+public class SocketFleetBus implements FleetBus {
+
+    private static final Logger log = LoggerFactory.getLogger(SocketFleetBus.class);
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int ACCEPT_BACKLOG = 50;
+    private static final long RECONNECT_DELAY_MS = 2000;
+
+    private final String nodeId;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ServerSocket server;
+    private final List<Outgoing> outgoing = new ArrayList<>();
+    private final List<Incoming> incoming = new CopyOnWriteArrayList<>();
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    // Orders topic changes against the topic list a new incoming connection starts from
+    private final Object subscriptionLock = new Object();
+    private final ScheduledExecutorService connector;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Consumer<FleetEvent> listener = event -> { };
+    private volatile boolean closed;
+
+    public SocketFleetBus(String nodeId, String bindAddress, int port, List<InetSocketAddress> peers) throws IOException {
+        this.nodeId = nodeId;
+        this.server = new ServerSocket(port, ACCEPT_BACKLOG, InetAddress.getByName(bindAddress));
+        for (InetSocketAddress peer : peers) {
+            outgoing.add(new Outgoing(peer));
+        }
+
+        startThread("fleet-bus-accept", this::acceptLoop);
+        connector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fleet-bus-connect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connector.scheduleWithFixedDelay(this::connectPeers, 0, RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+        log.info("Fleet bus node {} listening on {}:{}, peers {}", nodeId, bindAddress, server.getLocalPort(), peers);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void publish(FleetEvent event) {
+        published.incrementAndGet();
+        String line = null;
+        for (Outgoing peer : outgoing) {
+            if (!peer.isConnected() || !event.matches(peer.remoteTopics)) continue;
+            if (line == null) {
+                line = encodeEvent(event);
+                if (line == null) return;
+            }
+            if (!peer.queue.offer(line)) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(String topic) {
+        synchronized (subscriptionLock) {
+            if (topics.add(topic)) {
+                sendToIncoming("sub", topic);
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribe(String topic) {
+        synchronized (subscriptionLock) {
+            if (topics.remove(topic)) {
+                sendToIncoming("unsub", topic);
+            }
+        }
+    }
+
+    @Override
+    public void setListener(Consumer<FleetEvent> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> peers = new ArrayList<>();
+        for (Outgoing peer : outgoing) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("address", peer.address.getHostString() + ":" + peer.address.getPort());
+            stats.put("node", peer.remoteNode);
+            stats.put("connected", peer.isConnected());
+            stats.put("topics", peer.remoteTopics.size());
+            stats.put("queued", peer.queue.size());
+            peers.add(stats);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("mode", "socket");
+        stats.put("port", server.getLocalPort());
+        stats.put("topics", topics.size());
+        stats.put("incoming", incoming.size());
+        stats.put("published", published.get());
+        stats.put("received", received.get());
+        stats.put("dropped", dropped.get());
+        stats.put("peers", peers);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        connector.shutdownNow();
+        closeQuietly(server);
+        for (Outgoing peer : outgoing) {
+            peer.disconnect();
+        }
+        for (Incoming link : incoming) {
+            closeQuietly(link.socket);
+        }
+    }
+
+    private String encodeEvent(FleetEvent event) {
+        try {
+            ObjectNode message = objectMapper.createObjectNode();
+            message.put("op", "event");
+            message.set("event", objectMapper.valueToTree(event));
+            return objectMapper.writeValueAsString(message);
+        } catch (Exception e) {
+            log.error("Error encoding fleet event: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String control(String op, String value) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("op", op);
+        message.put(op.equals("hello") ? "node" : "topic", value);
+        return message.toString();
+    }
+
+    private void sendToIncoming(String op, String topic) {
+        String line = control(op, topic);
+        for (Incoming link : incoming) {
+            link.send(line);
+        }
+    }
+
+    private void connectPeers() {
+        for (Outgoing peer : outgoing) {
+            if (!closed && !peer.isConnected()) {
+                peer.connect();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Incoming link = new Incoming(socket);
+                synchronized (subscriptionLock) {
+                    link.send(control("hello", nodeId));
+                    for (String topic : topics) {
+                        link.send(control("sub", topic));
+                    }
+                    incoming.add(link);
+                }
+                startThread("fleet-bus-in-" + socket.getPort(), link::readEvents);
+                startThread("fleet-bus-in-sub-" + socket.getPort(), link::writeLoop);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Fleet bus accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Writes whatever is queued, waiting up to a second for the first line, then flushes once
+    private static void writeQueued(BlockingQueue<String> queue, BufferedWriter writer) throws IOException, InterruptedException {
+        String line = queue.poll(1, TimeUnit.SECONDS);
+        if (line == null) return;
+        do {
+            writer.write(line);
+            writer.newLine();
+        } while ((line = queue.poll()) != null);
+        writer.flush();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // Already closed or broken; nothing left to release
+        }
+    }
+
+    // Our events out, the peer's subscriptions in
+    private final class Outgoing {
+        final InetSocketAddress address;
+        final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Set<String> remoteTopics = ConcurrentHashMap.newKeySet();
+        volatile Socket socket;
+        volatile String remoteNode;
+
+        Outgoing(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        boolean isConnected() {
+            Socket current = socket;
+            return current != null && !current.isClosed();
+        }
+
+        void connect() {
+            Socket connected = new Socket();
+            try {
+                // Resolved on every attempt, so a peer that was not up (or in DNS) at startup is found later
+                connected.connect(new InetSocketAddress(address.getHostString(), address.getPort()), 1000);
+                connected.setTcpNoDelay(true);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(connected.getOutputStream(), StandardCharsets.UTF_8));
+                writer.write(control("hello", nodeId));
+                writer.newLine();
+                writer.flush();
+
+                remoteTopics.clear();
+                queue.clear();
+                socket = connected;
+                startThread("fleet-bus-out-" + address.getPort(), () -> writeLoop(connected, writer));
+                startThread("fleet-bus-sub-" + address.getPort(), () -> readSubscriptions(connected));
+            } catch (IOException e) {
+                closeQuietly(connected);
+            }
+        }
+
+        private void writeLoop(Socket connected, BufferedWriter writer) {
+            try {
+                while (socket == connected && !connected.isClosed()) {
+                    writeQueued(queue, writer);
+                }
+            } catch (IOException | InterruptedException e) {
+                if (!closed) {
+                    log.warn("Fleet bus link to {} lost: {}", address, e.getMessage());
+                }
+            } finally {
+                closeQuietly(connected);
+            }
+        }
+
+        private void readSubscriptions(Socket connected) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connected.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JsonNode message = objectMapper.readTree(line);
+                    String op = message.path("op").asText();
+                    if (op.equals("hello")) {
+                        remoteNode = message.path("node").asText();
+                    } else if (op.equals("sub")) {
+                        remoteTopics.add(message.path("topic").asText());
+                    } else if (op.equals("unsub")) {
+                        remoteTopics.remove(message.path("topic").asText());
+                    }
+                }
+            } catch (IOException e) {
+                // Connection closed; the writer notices too and the connector reconnects
+            } finally {
+                closeQuietly(connected);
+            }
+        }
+
+        void disconnect() {
+            Socket current = socket;
+            if (current != null) {
+                closeQuietly(current);
+            }
+        }
+    }
+
+    // The peer's events in, our subscriptions out
+    private final class Incoming {
+        final Socket socket;
+        final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        Incoming(Socket socket) {
+            this.socket = socket;
+        }
+
+        void send(String line) {
+            if (!queue.offer(line)) {
+                log.warn("Fleet bus subscription queue to {} full, dropping the connection", socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+            }
+        }
+
+        void writeLoop() {
+            try {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                while (!socket.isClosed()) {
+                    writeQueued(queue, writer);
+                }
+            } catch (IOException | InterruptedException e) {
+                // Peer went away; the reader notices too
+            } finally {
+                closeQuietly(socket);
+            }
+        }
+
+        void readEvents() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JsonNode message = objectMapper.readTree(line);
+                    if (!"event".equals(message.path("op").asText())) continue;
+                    FleetEvent event = objectMapper.treeToValue(message.get("event"), FleetEvent.class);
+                    if (nodeId.equals(event.getOrigin())) continue;
+                    received.incrementAndGet();
+                    try {
+                        listener.accept(event);
+                    } catch (Exception e) {
+                        log.error("Error handling fleet event from {}: {}", event.getOrigin(), e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                // Peer went away; it reconnects to us on its own
+            } finally {
+                incoming.remove(this);
+                closeQuietly(socket);
+            }
+        }
+    }
+}
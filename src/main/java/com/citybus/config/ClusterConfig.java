@@ -0,0 +1,44 @@
+package com.citybus.config;
+
+import com.citybus.cluster.FleetBus;
+import com.citybus.cluster.InMemoryFleetBus;
+import com.citybus.cluster.SocketFleetBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Configuration
+public class ClusterConfig {
+
+    // "memory" runs a single node; "socket" connects to the peers listed in citybus.cluster.peers
+    @Bean(destroyMethod = "close")
+    public FleetBus fleetBus(@Value("${citybus.cluster.mode:memory}") String mode,
+                             @Value("${citybus.cluster.node-id:}") String nodeId,
+                             @Value("${citybus.cluster.bind-address:127.0.0.1}") String bindAddress,
+                             @Value("${citybus.cluster.port:7600}") int port,
+                             @Value("${citybus.cluster.peers:}") String peers) throws IOException {
+        String id = nodeId.isBlank() ? "node-" + UUID.randomUUID().toString().substring(0, 8) : nodeId;
+        if ("socket".equals(mode)) {
+            return new SocketFleetBus(id, bindAddress, port, parsePeers(peers));
+        }
+        return new InMemoryFleetBus(id, new InMemoryFleetBus.Hub());
+    }
+
+    private static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            String trimmed = peer.trim();
+            int colon = trimmed.lastIndexOf(':');
+            if (colon > 0) {
+                addresses.add(InetSocketAddress.createUnresolved(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+            }
+        }
+        return addresses;
+    }
+}
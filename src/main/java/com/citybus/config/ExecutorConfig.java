@@ -0,0 +1,81 @@
+package com.citybus.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Thread strategy for request handling, WebSocket sends and scheduled work.
+ *
+ * {@code citybus.executor.mode=platform} (the default) uses bounded pools of
+ * platform threads. {@code virtual} runs Tomcat's request and WebSocket
+ * message threads, the per-session send workers and the scheduled broadcasts
+ * on virtual threads, so a blocking socket write parks instead of holding a
+ * pool thread. Virtual mode needs a Java 21+ runtime; on older JVMs it falls
+ * back to platform threads with a warning.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final boolean virtual;
+
+    public ExecutorConfig(@Value("${citybus.executor.mode:platform}") String mode) {
+        boolean requested = MODE_VIRTUAL.equalsIgnoreCase(mode);
+        if (requested && !VirtualThreads.isSupported()) {
+            log.warn("citybus.executor.mode=virtual needs Java 21+, running on {}; using platform threads",
+                    System.getProperty("java.version"));
+        }
+        this.virtual = requested && VirtualThreads.isSupported();
+        log.info("Executor mode: {}", virtual ? MODE_VIRTUAL : MODE_PLATFORM);
+    }
+
+    // Runs the per-session send workers, keeping socket writes off the inbound message threads
+    @Bean(name = "webSocketSendExecutor")
+    public Executor webSocketSendExecutor(@Value("${citybus.websocket.send-threads:8}") int sendThreads) {
+        if (virtual) {
+            return VirtualThreads.perTaskExecutor("ws-send-");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(sendThreads);
+        executor.setMaxPoolSize(sendThreads);
+        executor.setThreadNamePrefix("ws-send-");
+        executor.setDaemon(true);
+        executor.initialize();
+        return executor;
+    }
+
+    // Used by every @Scheduled method; one task never overlaps itself, different tasks may run together
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${citybus.executor.scheduler-threads:4}") int schedulerThreads) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulerThreads);
+        scheduler.setThreadNamePrefix("scheduling-");
+        if (virtual) {
+            scheduler.setThreadFactory(VirtualThreads.factory("scheduling-"));
+        }
+        return scheduler;
+    }
+
+    // Tomcat's connector threads also run WebSocket message handling
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandler() {
+        return protocolHandler -> {
+            if (virtual) {
+                protocolHandler.setExecutor(VirtualThreads.perTaskExecutor("http-"));
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package com.citybus.config;
+
+import com.citybus.model.AuthPrincipal;
+import com.citybus.service.AuthService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Authenticates HTTP requests carrying {@code Authorization: Bearer <jwt>}.
+ * The token's role claim becomes a {@code ROLE_*} authority, so URL rules can
+ * require a role. Requests without a valid token stay anonymous and are left
+ * to those rules.
+ */
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final AuthService authService;
+
+    public JwtAuthenticationFilter(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            AuthPrincipal principal = authService.authenticate(header.substring(BEARER_PREFIX.length()));
+            if (principal != null && principal.getRole() != null) {
+                SimpleGrantedAuthority authority =
+                        new SimpleGrantedAuthority("ROLE_" + principal.getRole().toUpperCase(Locale.ROOT));
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken(principal, null, List.of(authority)));
+            }
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,56 @@
+package com.citybus.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (JDK 21+) without compiling against them, so the
+ * build keeps its Java 11 target and the same jar picks virtual threads up
+ * when it runs on a JVM that has them.
+ */
+final class VirtualThreads {
+
+    private static final Object BUILDER_API = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static Object lookup() {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            return new Method[] {
+                    Thread.class.getMethod("ofVirtual"),
+                    builder.getMethod("name", String.class, long.class),
+                    builder.getMethod("factory")
+            };
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return BUILDER_API != null;
+    }
+
+    // Factory for virtual threads named prefix0, prefix1, ...
+    static ThreadFactory factory(String prefix) {
+        if (BUILDER_API == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+        }
+        Method[] api = (Method[]) BUILDER_API;
+        try {
+            Object builder = api[0].invoke(null);
+            builder = api[1].invoke(builder, prefix, 0L);
+            return (ThreadFactory) api[2].invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create virtual thread factory", e);
+        }
+    }
+
+    // Starts every task on a new virtual thread; there is no pool to size or exhaust
+    static Executor perTaskExecutor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        return task -> factory.newThread(task).start();
+    }
+}
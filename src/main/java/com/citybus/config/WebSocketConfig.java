@@ -1,5 +1,6 @@
 package com.citybus.config;
 
+import com.citybus.websocket.AuthHandshakeInterceptor;
 import com.citybus.websocket.BusTrackingWebSocketHandler;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -11,14 +12,17 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final BusTrackingWebSocketHandler webSocketHandler;
+    private final AuthHandshakeInterceptor authHandshakeInterceptor;
 
-    public WebSocketConfig(BusTrackingWebSocketHandler webSocketHandler) {
+    public WebSocketConfig(BusTrackingWebSocketHandler webSocketHandler, AuthHandshakeInterceptor authHandshakeInterceptor) {
         this.webSocketHandler = webSocketHandler;
+        this.authHandshakeInterceptor = authHandshakeInterceptor;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(webSocketHandler, "/websocket")
+                .addInterceptors(authHandshakeInterceptor)
                 .setAllowedOrigins("*");
     }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.citybus.controller;
+
+import com.citybus.model.BusAssignment;
+import com.citybus.service.AssignmentRegistry;
+import com.citybus.service.RouteStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+
+    private final RouteStore routeStore;
+    private final AssignmentRegistry assignmentRegistry;
+
+    public AdminController(RouteStore routeStore, AssignmentRegistry assignmentRegistry) {
+        this.routeStore = routeStore;
+        this.assignmentRegistry = assignmentRegistry;
+    }
+
+    @GetMapping("/routes/status")
+    public ResponseEntity<Map<String, Object>> getRouteStatus() {
+        return ResponseEntity.ok(routeStore.getLastLoad());
+    }
+
+    // Re-reads the configured route store; on failure the current routes stay in service
+    @PostMapping("/routes/reload")
+    public ResponseEntity<Map<String, Object>> reloadRoutes() {
+        try {
+            return ResponseEntity.ok(routeStore.reload());
+        } catch (IOException | RuntimeException e) {
+            log.error("Route reload failed: {}", e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Route reload failed: " + e.getMessage());
+            response.put("current", routeStore.getLastLoad());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    @GetMapping("/assignments")
+    public ResponseEntity<Collection<BusAssignment>> getAssignments() {
+        return ResponseEntity.ok(assignmentRegistry.getAll());
+    }
+
+    @PutMapping("/assignments/{busId}")
+    public ResponseEntity<?> assignBus(@PathVariable String busId, @RequestBody Map<String, String> request) {
+        String routeId = request.get("routeId");
+        if (routeId == null || routeId.isBlank()) {
+            return ResponseEntity.badRequest().body(createErrorResponse("routeId is required"));
+        }
+        try {
+            return ResponseEntity.ok(assignmentRegistry.assign(busId, routeId, request.get("tripId"),
+                    AssignmentRegistry.SOURCE_ADMIN));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/assignments/{busId}")
+    public ResponseEntity<?> unassignBus(@PathVariable String busId) {
+        BusAssignment removed = assignmentRegistry.unassign(busId);
+        if (removed != null) {
+            return ResponseEntity.ok(removed);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    private Map<String, Object> createErrorResponse(String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", message);
+        error.put("success", false);
+        return error;
+    }
+}
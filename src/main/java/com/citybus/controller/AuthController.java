@@ -1,5 +1,6 @@
 package com.citybus.controller;
 
+import com.citybus.model.AuthPrincipal;
 import com.citybus.model.User;
 import com.citybus.service.AuthService;
 import com.citybus.service.UserService;
@@ -42,8 +43,8 @@ public class AuthController {
                 User user = userOpt.get();
                 if (userService.verifyPassword(password, user.getPasswordHash())) {
 
-                    // Only allow driver login through this endpoint
-                    if (!"driver".equals(user.getRole())) {
+                    // Only drivers and admins log in through this endpoint
+                    if (!"driver".equals(user.getRole()) && !"admin".equals(user.getRole())) {
                         return ResponseEntity.badRequest()
                                 .body(createErrorResponse("Access denied. Driver credentials required."));
                     }
@@ -119,16 +120,14 @@ public class AuthController {
             }
 
             String token = authHeader.substring(7);
-            String username = authService.getUsernameFromToken(token);
-            String role = authService.getRoleFromToken(token);
-            String busId = authService.getBusIdFromToken(token);
+            AuthPrincipal principal = authService.authenticate(token);
 
-            if (username != null && role != null) {
+            if (principal != null && principal.getUsername() != null && principal.getRole() != null) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("valid", true);
-                response.put("username", username);
-                response.put("role", role);
-                response.put("busId", busId);
+                response.put("username", principal.getUsername());
+                response.put("role", principal.getRole());
+                response.put("busId", principal.getBusId());
                 return ResponseEntity.ok(response);
             }
 
@@ -0,0 +1,85 @@
+package com.citybus.controller;
+
+import com.citybus.cluster.FleetBus;
+import com.citybus.service.FleetStateStore;
+import com.citybus.service.StopEventLog;
+import com.citybus.service.TrackLog;
+import com.citybus.websocket.BusTrackingWebSocketHandler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/monitoring")
+public class MonitoringController {
+
+    private final BusTrackingWebSocketHandler webSocketHandler;
+    private final TrackLog trackLog;
+    private final StopEventLog stopEventLog;
+    private final FleetStateStore fleetStateStore;
+    private final FleetBus fleetBus;
+
+    public MonitoringController(BusTrackingWebSocketHandler webSocketHandler, TrackLog trackLog,
+                                StopEventLog stopEventLog, FleetStateStore fleetStateStore, FleetBus fleetBus) {
+        this.webSocketHandler = webSocketHandler;
+        this.trackLog = trackLog;
+        this.stopEventLog = stopEventLog;
+        this.fleetStateStore = fleetStateStore;
+        this.fleetBus = fleetBus;
+    }
+
+    @GetMapping("/websocket")
+    public ResponseEntity<Map<String, Object>> getWebSocketStats() {
+        List<Map<String, Object>> sessions = webSocketHandler.getOutboundStats();
+
+        long queued = 0;
+        long dropped = 0;
+        long failures = 0;
+        for (Map<String, Object> session : sessions) {
+            queued += ((Number) session.get("queueDepth")).longValue();
+            dropped += ((Number) session.get("droppedFrames")).longValue();
+            failures += ((Number) session.get("sendFailures")).longValue();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("sessionCount", sessions.size());
+        response.put("queuedFrames", queued);
+        response.put("droppedFrames", dropped);
+        response.put("sendFailures", failures);
+        response.put("sessions", sessions);
+        return ResponseEntity.ok(response);
+    }
+
+    // Received vs emitted location fixes per bus, for tuning the ingest tick
+    @GetMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> getIngestStats() {
+        return ResponseEntity.ok(webSocketHandler.getIngestStats());
+    }
+
+    // Segment and buffer counters for the location history writer
+    @GetMapping("/tracklog")
+    public ResponseEntity<Map<String, Object>> getTrackLogStats() {
+        return ResponseEntity.ok(trackLog.getStats());
+    }
+
+    // Buffer counters for the stop arrival/departure log
+    @GetMapping("/stop-events")
+    public ResponseEntity<Map<String, Object>> getStopEventLogStats() {
+        return ResponseEntity.ok(stopEventLog.getStats());
+    }
+
+    // Last fleet snapshot written and the restore done at startup
+    @GetMapping("/fleet-snapshot")
+    public ResponseEntity<Map<String, Object>> getFleetSnapshotStats() {
+        return ResponseEntity.ok(fleetStateStore.getStats());
+    }
+
+    // Fleet bus links and event counters for this node
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> getClusterStats() {
+        return ResponseEntity.ok(fleetBus.getStats());
+    }
+}
@@ -1,27 +1,184 @@
 package com.citybus.controller;
 
-import com.citybus.model.Route;
-import com.citybus.service.BusTrackingService;
+import com.citybus.model.Position;
+import com.citybus.service.EtaService;
+import com.citybus.service.RoutePayloadCache;
+import com.citybus.service.RoutePayloadCache.RoutePayload;
+import com.citybus.service.StopEvent;
+import com.citybus.service.StopEventLog;
+import com.citybus.service.TrackLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 @RestController
 @RequestMapping("/api")
 public class RouteController {
 
-    private final BusTrackingService busTrackingService;
+    private static final long HISTORY_DEFAULT_WINDOW_MS = 3_600_000L;
+    private static final int HISTORY_MAX_POINTS = 50_000;
+
+    private final RoutePayloadCache routePayloadCache;
+    private final EtaService etaService;
+    private final TrackLog trackLog;
+    private final StopEventLog stopEventLog;
+    private final CacheControl routeCacheControl;
 
-    public RouteController(BusTrackingService busTrackingService) {
-        this.busTrackingService = busTrackingService;
+    public RouteController(RoutePayloadCache routePayloadCache,
+                           EtaService etaService,
+                           TrackLog trackLog,
+                           StopEventLog stopEventLog,
+                           @Value("${citybus.routes.cache-max-age-s:300}") long routeCacheMaxAgeSeconds) {
+        this.routePayloadCache = routePayloadCache;
+        this.etaService = etaService;
+        this.trackLog = trackLog;
+        this.stopEventLog = stopEventLog;
+        this.routeCacheControl = CacheControl.maxAge(routeCacheMaxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+    }
+
+    // Every route keyed by id, in one response
+    @GetMapping("/routes")
+    public ResponseEntity<byte[]> getRoutes(@RequestParam(defaultValue = RoutePayloadCache.FORMAT_JSON) String format,
+                                            @RequestHeader HttpHeaders requestHeaders) {
+        if (!RoutePayloadCache.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return respond(routePayloadCache.getAll(format), requestHeaders);
     }
 
     @GetMapping("/routes/{id}")
-    public ResponseEntity<Route> getRoute(@PathVariable Long id) {
-        Route route = busTrackingService.getRoute(id.toString());
-        if (route != null) {
-            return ResponseEntity.ok(route);
+    public ResponseEntity<byte[]> getRoute(@PathVariable String id,
+                                           @RequestParam(defaultValue = RoutePayloadCache.FORMAT_JSON) String format,
+                                           @RequestHeader HttpHeaders requestHeaders) {
+        if (!RoutePayloadCache.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        RoutePayload payload = routePayloadCache.get(id, format);
+        if (payload != null) {
+            return respond(payload, requestHeaders);
         } else {
             return ResponseEntity.notFound().build();
         }
     }
-}
\ No newline at end of file
+
+    // Serves precomputed bytes; a matching If-None-Match is answered with 304 and no body
+    private ResponseEntity<byte[]> respond(RoutePayload payload, HttpHeaders requestHeaders) {
+        boolean gzip = acceptsGzip(requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        String etag = gzip ? payload.getGzipEtag() : payload.getEtag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl(routeCacheControl);
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+        if (matchesEtag(requestHeaders.getIfNoneMatch(), etag)) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return new ResponseEntity<>(gzip ? payload.getGzipBody() : payload.getBody(), headers, HttpStatus.OK);
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (!"gzip".equalsIgnoreCase(tokens[0].trim())) continue;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim().replace(" ", "");
+                if (param.equals("q=0") || param.matches("q=0\\.0*")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matchesEtag(List<String> ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch) {
+            if (candidate.equals("*")) return true;
+            String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    @GetMapping("/buses/{busId}/eta")
+    public ResponseEntity<Map<String, Object>> getBusEta(@PathVariable String busId) {
+        Map<String, Object> eta = etaService.getEta(busId);
+        if (eta != null) {
+            return ResponseEntity.ok(eta);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Recorded path of a bus, oldest first; defaults to the last hour
+    @GetMapping("/buses/{busId}/history")
+    public ResponseEntity<Map<String, Object>> getBusHistory(@PathVariable String busId,
+                                                             @RequestParam(required = false) Long from,
+                                                             @RequestParam(required = false) Long to,
+                                                             @RequestParam(defaultValue = "5000") int limit) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - HISTORY_DEFAULT_WINDOW_MS;
+        if (start > end || limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        int cappedLimit = Math.min(limit, HISTORY_MAX_POINTS);
+
+        List<Position> points = trackLog.history(busId, start, end, cappedLimit);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("busId", busId);
+        response.put("from", start);
+        response.put("to", end);
+        response.put("count", points.size());
+        response.put("truncated", points.size() == cappedLimit);
+        response.put("points", points);
+        return ResponseEntity.ok(response);
+    }
+
+    // Stop arrivals and departures of a bus, oldest first; defaults to the last hour
+    @GetMapping("/buses/{busId}/stop-events")
+    public ResponseEntity<Map<String, Object>> getBusStopEvents(@PathVariable String busId,
+                                                                @RequestParam(required = false) Long from,
+                                                                @RequestParam(required = false) Long to,
+                                                                @RequestParam(defaultValue = "1000") int limit) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - HISTORY_DEFAULT_WINDOW_MS;
+        if (start > end || limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        int cappedLimit = Math.min(limit, HISTORY_MAX_POINTS);
+
+        List<Map<String, Object>> events = new ArrayList<>();
+        for (StopEvent event : stopEventLog.history(busId, start, end, cappedLimit)) {
+            Map<String, Object> entry = event.toMessage();
+            entry.put("type", event.getType());
+            events.add(entry);
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("busId", busId);
+        response.put("from", start);
+        response.put("to", end);
+        response.put("count", events.size());
+        response.put("truncated", events.size() == cappedLimit);
+        response.put("events", events);
+        return ResponseEntity.ok(response);
+    }
+}
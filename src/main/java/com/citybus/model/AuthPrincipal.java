@@ -0,0 +1,63 @@
+package com.citybus.model;
+
+/**
+ * Identity resolved from a validated JWT. Immutable, so a single instance can
+ * be cached and shared between requests until the token expires.
+ */
+public final class AuthPrincipal {
+    private final Long userId;
+    private final String username;
+    private final String role;
+    private final String busId;
+    private final long expiresAt;
+
+    public AuthPrincipal(Long userId, String username, String role, String busId, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.busId = busId;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isDriver() {
+        return "driver".equals(role);
+    }
+
+    public boolean isAdmin() {
+        return "admin".equals(role);
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthPrincipal{" +
+                "userId=" + userId +
+                ", username='" + username + '\'' +
+                ", role='" + role + '\'' +
+                ", busId='" + busId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+package com.citybus.model;
+
+/**
+ * Which route, and optionally which trip, a bus is currently running.
+ * Immutable; a change of assignment replaces the whole object.
+ */
+public final class BusAssignment {
+    private final String busId;
+    private final String routeId;
+    private final String tripId;
+    private final String source;
+    private final long assignedAt;
+
+    public BusAssignment(String busId, String routeId, String tripId, String source, long assignedAt) {
+        this.busId = busId;
+        this.routeId = routeId;
+        this.tripId = tripId;
+        this.source = source;
+        this.assignedAt = assignedAt;
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public String getTripId() {
+        return tripId;
+    }
+
+    // Who made the assignment: config, driver or admin
+    public String getSource() {
+        return source;
+    }
+
+    public long getAssignedAt() {
+        return assignedAt;
+    }
+}
@@ -0,0 +1,95 @@
+package com.citybus.model;
+
+/**
+ * Live state of a connected driver.
+ *
+ * Thread-safety: identity fields are final. The latest fix is an immutable
+ * {@link Position} published through a volatile field, so coordinates and
+ * their timestamp are always observed as one snapshot. Visibility and
+ * lastSeen are independent volatile primitives; only the session's own
+ * inbound thread writes them, any thread may read them.
+ *
+ * A driver restored from a fleet snapshot after a restart has no session
+ * (sessionId is null) and the stale status until the driver registers again.
+ * A driver connected to another node of the cluster has no session and the
+ * active status.
+ */
+public class DriverSession {
+    public static final String STATUS_ACTIVE = "active";
+    public static final String STATUS_STALE = "stale";
+
+    private final String sessionId;
+    private final String driverId;
+    private final String busId;
+    private final int busIndex;
+
+    private volatile Position position;
+    private volatile boolean visible = true;
+    private volatile long lastSeen;
+    private volatile String status = STATUS_ACTIVE;
+
+    public DriverSession(String sessionId, String driverId, String busId, int busIndex, long lastSeen) {
+        this.sessionId = sessionId;
+        this.driverId = driverId;
+        this.busId = busId;
+        this.busIndex = busIndex;
+        this.lastSeen = lastSeen;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public int getBusIndex() {
+        return busIndex;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    public void updatePosition(Position position) {
+        this.position = position;
+        this.lastSeen = position.getTimestamp();
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void touch(long now) {
+        this.lastSeen = now;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public boolean isStale() {
+        return STATUS_STALE.equals(status);
+    }
+
+    public boolean isRemote() {
+        return sessionId == null && !isStale();
+    }
+}
@@ -0,0 +1,40 @@
+package com.citybus.model;
+
+/**
+ * Immutable GPS fix. Coordinates, accuracy and timestamp are always read and
+ * replaced together, so a reader never sees the latitude of one fix paired
+ * with the longitude or time of another.
+ */
+public final class Position {
+    private final double lat;
+    private final double lng;
+    private final double accuracy;
+    private final long timestamp;
+
+    public Position(double lat, double lng, double accuracy, long timestamp) {
+        this.lat = lat;
+        this.lng = lng;
+        this.accuracy = accuracy;
+        this.timestamp = timestamp;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double[] toCoords() {
+        return new double[] { lat, lng };
+    }
+}
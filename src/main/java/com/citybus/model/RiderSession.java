@@ -0,0 +1,76 @@
+package com.citybus.model;
+
+/**
+ * Live state of a connected rider.
+ *
+ * Thread-safety follows {@link DriverSession}: the rider's location is an
+ * immutable {@link Position} swapped atomically, and the remaining mutable
+ * fields are volatile.
+ */
+public class RiderSession {
+    private final String sessionId;
+    private final String userId;
+
+    private volatile Position position;
+    private volatile String trackingBusId;
+    private volatile long lastSeen;
+
+    // Riders that opt in receive active-buses deltas against the last version they acknowledged
+    private volatile boolean snapshotDeltas;
+    private volatile long snapshotVersion = -1;
+
+    public RiderSession(String sessionId, String userId, long lastSeen) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.lastSeen = lastSeen;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    public void updatePosition(Position position) {
+        this.position = position;
+        this.lastSeen = position.getTimestamp();
+    }
+
+    public String getTrackingBusId() {
+        return trackingBusId;
+    }
+
+    public void setTrackingBusId(String trackingBusId) {
+        this.trackingBusId = trackingBusId;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void touch(long now) {
+        this.lastSeen = now;
+    }
+
+    public boolean isSnapshotDeltas() {
+        return snapshotDeltas;
+    }
+
+    public void setSnapshotDeltas(boolean snapshotDeltas) {
+        this.snapshotDeltas = snapshotDeltas;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public void setSnapshotVersion(long snapshotVersion) {
+        this.snapshotVersion = snapshotVersion;
+    }
+}
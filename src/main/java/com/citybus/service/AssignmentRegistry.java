@@ -0,0 +1,87 @@
+package com.citybus.service;
+
+import com.citybus.model.BusAssignment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bus to route (and trip) assignments, looked up on every location update to
+ * pick the route used for snapping, ETAs and route-scoped fan-out.
+ *
+ * Assignments are seeded from {@code citybus.assignments.defaults}
+ * ({@code busId:routeId} pairs), can be set by a driver at registration
+ * (shift start), and changed at runtime through the admin API. A bus without
+ * an assignment has no route: its positions are published raw and only reach
+ * riders subscribed to the bus or to everything.
+ */
+@Component
+public class AssignmentRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(AssignmentRegistry.class);
+
+    public static final String SOURCE_CONFIG = "config";
+    public static final String SOURCE_DRIVER = "driver";
+    public static final String SOURCE_ADMIN = "admin";
+
+    private final RouteStore routeStore;
+    private final Map<String, BusAssignment> assignments = new ConcurrentHashMap<>();
+
+    public AssignmentRegistry(RouteStore routeStore,
+                              @Value("${citybus.assignments.defaults:}") String defaults) {
+        this.routeStore = routeStore;
+        long now = System.currentTimeMillis();
+        for (String pair : defaults.split(",")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length == 2 && !parts[0].isBlank() && !parts[1].isBlank()) {
+                assignments.put(parts[0].trim(), new BusAssignment(parts[0].trim(), parts[1].trim(), null, SOURCE_CONFIG, now));
+            }
+        }
+    }
+
+    public BusAssignment get(String busId) {
+        return busId != null ? assignments.get(busId) : null;
+    }
+
+    public String getRouteId(String busId) {
+        BusAssignment assignment = get(busId);
+        return assignment != null ? assignment.getRouteId() : null;
+    }
+
+    /**
+     * Assigns a bus to a route, replacing any previous assignment. Throws
+     * IllegalArgumentException for a route the route store does not know.
+     */
+    public BusAssignment assign(String busId, String routeId, String tripId, String source) {
+        if (routeStore.getRoute(routeId) == null) {
+            throw new IllegalArgumentException("Unknown route: " + routeId);
+        }
+        BusAssignment assignment = new BusAssignment(busId, routeId, tripId, source, System.currentTimeMillis());
+        assignments.put(busId, assignment);
+        log.info("Bus {} assigned to route {}{} by {}", busId, routeId,
+                tripId != null ? " trip " + tripId : "", source);
+        return assignment;
+    }
+
+    // Puts back an assignment from a fleet snapshot as it was; false if its route no longer exists
+    public boolean restore(BusAssignment assignment) {
+        if (routeStore.getRoute(assignment.getRouteId()) == null) return false;
+        assignments.put(assignment.getBusId(), assignment);
+        return true;
+    }
+
+    public BusAssignment unassign(String busId) {
+        return assignments.remove(busId);
+    }
+
+    public Collection<BusAssignment> getAll() {
+        return Collections.unmodifiableCollection(new ArrayList<>(assignments.values()));
+    }
+}
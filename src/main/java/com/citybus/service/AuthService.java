@@ -1,6 +1,8 @@
 package com.citybus.service;
 
+import com.citybus.model.AuthPrincipal;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -9,7 +11,9 @@ import org.springframework.stereotype.Service;
 import javax.crypto.SecretKey;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class AuthService {
@@ -17,8 +21,18 @@ public class AuthService {
     private static final String SECRET_KEY = "mySecretKeyForJWTTokenGenerationThatIsLongEnough123456789";
     private static final int EXPIRATION_TIME = 86400000; // 24 hours in milliseconds
 
+    private static final int MAX_CACHED_TOKENS = 10000;
+
     private final SecretKey key = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
 
+    // Built once; JwtParser is immutable and thread-safe
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(key)
+            .build();
+
+    // Verified tokens mapped to their principal until the token expires. Invalid tokens are never cached.
+    private final Map<String, AuthPrincipal> principalCache = new ConcurrentHashMap<>();
+
     public String generateToken(Long userId, String username, String role, String busId) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
@@ -37,28 +51,70 @@ public class AuthService {
 
     public Claims validateToken(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return parser.parseClaimsJws(token).getBody();
         } catch (Exception e) {
             return null;
         }
     }
 
-    public String getUsernameFromToken(String token) {
+    /**
+     * Resolves a token to its principal, verifying the signature only the
+     * first time a token is seen. Returns null for invalid or expired tokens.
+     */
+    public AuthPrincipal authenticate(String token) {
+        if (token == null || token.isEmpty()) return null;
+
+        long now = System.currentTimeMillis();
+        AuthPrincipal cached = principalCache.get(token);
+        if (cached != null) {
+            if (!cached.isExpired(now)) return cached;
+            principalCache.remove(token, cached);
+            return null;
+        }
+
         Claims claims = validateToken(token);
-        return claims != null ? claims.getSubject() : null;
+        if (claims == null) return null;
+
+        Object userId = claims.get("userId");
+        Date expiration = claims.getExpiration();
+        AuthPrincipal principal = new AuthPrincipal(
+                userId instanceof Number ? ((Number) userId).longValue() : null,
+                claims.getSubject(),
+                (String) claims.get("role"),
+                (String) claims.get("busId"),
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+
+        if (principalCache.size() >= MAX_CACHED_TOKENS) {
+            evictCachedTokens(now);
+        }
+        principalCache.put(token, principal);
+        return principal;
+    }
+
+    // Drop expired entries first; if the cache is still full, drop an arbitrary tenth of it
+    private void evictCachedTokens(long now) {
+        principalCache.values().removeIf(principal -> principal.isExpired(now));
+
+        int toEvict = principalCache.size() - MAX_CACHED_TOKENS + MAX_CACHED_TOKENS / 10;
+        Iterator<String> it = principalCache.keySet().iterator();
+        while (toEvict-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public String getUsernameFromToken(String token) {
+        AuthPrincipal principal = authenticate(token);
+        return principal != null ? principal.getUsername() : null;
     }
 
     public String getRoleFromToken(String token) {
-        Claims claims = validateToken(token);
-        return claims != null ? (String) claims.get("role") : null;
+        AuthPrincipal principal = authenticate(token);
+        return principal != null ? principal.getRole() : null;
     }
 
     public String getBusIdFromToken(String token) {
-        Claims claims = validateToken(token);
-        return claims != null ? (String) claims.get("busId") : null;
+        AuthPrincipal principal = authenticate(token);
+        return principal != null ? principal.getBusId() : null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Arrival-time predictions for every downstream stop of each bus.
+ *
+ * Each route segment keeps an exponentially weighted average of the speeds
+ * buses have been observed travelling along it. A matched position updates
+ * the segments covered since the bus's previous position (usually one), then
+ * the bus's ETAs are recomputed once by walking the segments ahead of it.
+ * The result is cached per bus, so queries and broadcasts never recompute;
+ * the cache changes only when the bus moves. Learned speeds survive a route
+ * reload as long as the route keeps the same number of segments.
+ */
+@Service
+public class EtaService {
+
+    // 20 km/h until a segment has been observed
+    private static final double DEFAULT_SPEED_MPS = 20 / 3.6;
+    private static final double MIN_SPEED_MPS = 1.0;
+    private static final double MAX_SPEED_MPS = 30.0;
+    private static final double SPEED_ALPHA = 0.3;
+    private static final long MAX_SAMPLE_GAP_MS = 120_000;
+    private static final double DWELL_SECONDS_PER_STOP = 20;
+
+    // ETA broadcasts for a bus are spaced at least this far apart
+    private static final long BROADCAST_INTERVAL_MS = 10_000;
+
+    private final BusTrackingService busTrackingService;
+
+    private final Map<String, SegmentSpeeds> speedsByRoute = new ConcurrentHashMap<>();
+    private final Map<String, BusProgress> progressByBus = new ConcurrentHashMap<>();
+
+    public EtaService(BusTrackingService busTrackingService) {
+        this.busTrackingService = busTrackingService;
+    }
+
+    private static final class SegmentSpeeds {
+        final double[] speeds;
+
+        SegmentSpeeds(int segments) {
+            speeds = new double[segments];
+            Arrays.fill(speeds, DEFAULT_SPEED_MPS);
+        }
+
+        synchronized void observe(int from, int to, double speed) {
+            for (int i = from; i <= to; i++) {
+                speeds[i] += SPEED_ALPHA * (speed - speeds[i]);
+            }
+        }
+
+        synchronized double get(int segment) {
+            return speeds[segment];
+        }
+    }
+
+    private static final class BusProgress {
+        final RouteGeometry geometry;
+        final int segment;
+        final double distanceAlong;
+        final long timestamp;
+        final Map<String, Object> eta;
+        final long lastBroadcast;
+
+        BusProgress(RouteGeometry geometry, int segment, double distanceAlong, long timestamp,
+                    Map<String, Object> eta, long lastBroadcast) {
+            this.geometry = geometry;
+            this.segment = segment;
+            this.distanceAlong = distanceAlong;
+            this.timestamp = timestamp;
+            this.eta = eta;
+            this.lastBroadcast = lastBroadcast;
+        }
+    }
+
+    /**
+     * Feeds a matched position into the segment statistics and refreshes the
+     * bus's cached ETAs. Returns the new ETAs when they are due to be
+     * broadcast, otherwise null.
+     */
+    public Map<String, Object> onBusProgress(String busId, RouteMatch match, long timestamp) {
+        if (match == null || !match.isMatched()) return null;
+
+        RouteGeometry geometry = busTrackingService.getRouteGeometry(match.getRouteId());
+        if (geometry == null) return null;
+
+        int segments = geometry.getSegmentCount();
+        SegmentSpeeds speeds = speedsByRoute.compute(match.getRouteId(),
+                (routeId, current) -> current != null && current.speeds.length == segments ? current : new SegmentSpeeds(segments));
+
+        BusProgress previous = progressByBus.get(busId);
+        if (previous != null && previous.geometry == geometry) {
+            long elapsed = timestamp - previous.timestamp;
+            double travelled = match.getDistanceAlong() - previous.distanceAlong;
+            if (elapsed > 0 && elapsed <= MAX_SAMPLE_GAP_MS && travelled >= 0) {
+                double speed = travelled / (elapsed / 1000.0);
+                if (speed <= MAX_SPEED_MPS) {
+                    speeds.observe(previous.segment, match.getSegment(), speed);
+                }
+            }
+        }
+
+        Map<String, Object> eta = computeEta(busId, geometry, speeds, match, timestamp);
+
+        boolean due = previous == null || timestamp - previous.lastBroadcast >= BROADCAST_INTERVAL_MS;
+        long lastBroadcast = due ? timestamp : previous.lastBroadcast;
+        progressByBus.put(busId, new BusProgress(geometry, match.getSegment(), match.getDistanceAlong(),
+                timestamp, eta, lastBroadcast));
+        return due ? eta : null;
+    }
+
+    private Map<String, Object> computeEta(String busId, RouteGeometry geometry, SegmentSpeeds speeds,
+                                           RouteMatch match, long timestamp) {
+        List<Map<String, Object>> stops = new ArrayList<>();
+        int stopIndex = match.getNextStopIndex();
+        if (stopIndex >= 0) {
+            int segment = match.getSegment();
+            double position = match.getDistanceAlong();
+            double seconds = 0;
+            int stopsPassed = 0;
+
+            for (; stopIndex < geometry.getStopCount(); stopIndex++) {
+                double target = geometry.getStopDistance(stopIndex);
+
+                // Advance segment by segment up to the stop, each at its own average speed
+                while (segment < geometry.getSegmentCount() - 1 && geometry.getVertexDistance(segment + 1) < target) {
+                    seconds += (geometry.getVertexDistance(segment + 1) - position) / travelSpeed(speeds, segment);
+                    position = geometry.getVertexDistance(segment + 1);
+                    segment++;
+                }
+                seconds += Math.max(0, target - position) / travelSpeed(speeds, segment);
+                position = Math.max(position, target);
+
+                Map<String, Object> stop = new LinkedHashMap<>();
+                stop.put("stopIndex", stopIndex);
+                stop.put("name", geometry.getStopName(stopIndex));
+                stop.put("distanceMeters", Math.round(target - match.getDistanceAlong()));
+                long etaSeconds = Math.round(seconds + stopsPassed * DWELL_SECONDS_PER_STOP);
+                stop.put("etaSeconds", etaSeconds);
+                stop.put("arrivalTime", timestamp + etaSeconds * 1000);
+                stops.add(stop);
+                stopsPassed++;
+            }
+        }
+
+        Map<String, Object> eta = new LinkedHashMap<>();
+        eta.put("busId", busId);
+        eta.put("routeId", match.getRouteId());
+        eta.put("timestamp", timestamp);
+        eta.put("nextStop", match.getNextStop());
+        eta.put("stops", Collections.unmodifiableList(stops));
+        return Collections.unmodifiableMap(eta);
+    }
+
+    private double travelSpeed(SegmentSpeeds speeds, int segment) {
+        return Math.max(MIN_SPEED_MPS, speeds.get(segment));
+    }
+
+    // Drops speeds of removed routes and of routes whose shape changed; the rest carry over
+    @EventListener
+    public void onRoutesReloaded(RoutesReloadedEvent event) {
+        Map<String, Route> routes = event.getRoutes();
+        speedsByRoute.entrySet().removeIf(entry -> {
+            Route route = routes.get(entry.getKey());
+            return route == null || route.getPath() == null
+                    || route.getPath().size() - 1 != entry.getValue().speeds.length;
+        });
+    }
+
+    // Cached ETAs from the bus's last matched position, or null if there are none
+    public Map<String, Object> getEta(String busId) {
+        BusProgress progress = progressByBus.get(busId);
+        return progress != null ? progress.eta : null;
+    }
+
+    public void forget(String busId) {
+        progressByBus.remove(busId);
+    }
+}
@@ -0,0 +1,115 @@
+package com.citybus.service;
+
+import com.citybus.model.DriverSession;
+import com.citybus.model.RiderSession;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single registry of connected drivers and riders, shared by the WebSocket
+ * handler and {@link BusTrackingService}.
+ *
+ * Entries are indexed both by their identity (driverId / userId) and by the
+ * WebSocket session that owns them. Removal is by instance, so a session that
+ * closes after its driver or rider re-registered on a new session cannot evict
+ * the newer entry.
+ *
+ * Every bus is also given a compact integer index, stable for the lifetime of
+ * the process, which identifies it in binary frames.
+ */
+@Component
+public class FleetRegistry {
+
+    private final Map<String, DriverSession> driversById = new ConcurrentHashMap<>();
+    private final Map<String, DriverSession> driversBySession = new ConcurrentHashMap<>();
+    private final Map<String, RiderSession> ridersById = new ConcurrentHashMap<>();
+    private final Map<String, RiderSession> ridersBySession = new ConcurrentHashMap<>();
+    private final Map<String, Integer> busIndexes = new ConcurrentHashMap<>();
+    // Guarded by itself; a copy-on-write list would copy every id for each new bus
+    private final List<String> busIdsByIndex = new ArrayList<>();
+
+    public int getBusIndex(String busId) {
+        return busIndexes.computeIfAbsent(busId, id -> {
+            synchronized (busIdsByIndex) {
+                busIdsByIndex.add(id);
+                return busIdsByIndex.size() - 1;
+            }
+        });
+    }
+
+    public String getBusId(int busIndex) {
+        synchronized (busIdsByIndex) {
+            return busIndex >= 0 && busIndex < busIdsByIndex.size() ? busIdsByIndex.get(busIndex) : null;
+        }
+    }
+
+    public DriverSession registerDriver(DriverSession driver) {
+        DriverSession previous = driversById.put(driver.getDriverId(), driver);
+        if (previous != null && previous.getSessionId() != null) {
+            driversBySession.remove(previous.getSessionId(), previous);
+        }
+        if (driver.getSessionId() != null) {
+            driversBySession.put(driver.getSessionId(), driver);
+        }
+        return previous;
+    }
+
+    public DriverSession getDriver(String driverId) {
+        return driversById.get(driverId);
+    }
+
+    public DriverSession getDriverBySession(String sessionId) {
+        return driversBySession.get(sessionId);
+    }
+
+    public boolean removeDriver(DriverSession driver) {
+        if (driver.getSessionId() != null) {
+            driversBySession.remove(driver.getSessionId(), driver);
+        }
+        return driversById.remove(driver.getDriverId(), driver);
+    }
+
+    public Collection<DriverSession> getDrivers() {
+        return Collections.unmodifiableCollection(driversById.values());
+    }
+
+    public int getDriverCount() {
+        return driversById.size();
+    }
+
+    public RiderSession registerRider(RiderSession rider) {
+        RiderSession previous = ridersById.put(rider.getUserId(), rider);
+        if (previous != null) {
+            ridersBySession.remove(previous.getSessionId(), previous);
+        }
+        ridersBySession.put(rider.getSessionId(), rider);
+        return previous;
+    }
+
+    public RiderSession getRider(String userId) {
+        return ridersById.get(userId);
+    }
+
+    public RiderSession getRiderBySession(String sessionId) {
+        return ridersBySession.get(sessionId);
+    }
+
+    public boolean removeRider(RiderSession rider) {
+        ridersBySession.remove(rider.getSessionId(), rider);
+        return ridersById.remove(rider.getUserId(), rider);
+    }
+
+    public Collection<RiderSession> getRiders() {
+        return Collections.unmodifiableCollection(ridersById.values());
+    }
+
+    public int getRiderCount() {
+        return ridersById.size();
+    }
+}
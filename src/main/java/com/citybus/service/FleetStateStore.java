@@ -0,0 +1,298 @@
+package com.citybus.service;
+
+import com.citybus.model.BusAssignment;
+import com.citybus.model.BusLocation;
+import com.citybus.model.DriverSession;
+import com.citybus.model.Position;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodic snapshot of live fleet state, restored on startup so riders see
+ * buses straight after a restart instead of an empty map until every driver
+ * pings again.
+ *
+ * A snapshot holds each driver's bus, last position, visibility and lastSeen,
+ * the last known {@link BusLocation} of each bus and the route assignments.
+ * It is taken by reading the registries' concurrent maps and the drivers'
+ * immutable positions, so it never locks anything the ingest path uses. The
+ * file is written to a temporary name and moved into place, so a crash while
+ * writing leaves the previous snapshot intact. Restoring reads the whole file
+ * before registering anything, so a truncated or corrupt file restores nothing
+ * rather than part of the fleet.
+ *
+ * Restored drivers have no WebSocket session and are marked stale until the
+ * real driver registers again and replaces them. Ones that never come back
+ * expire a fixed time after they were last seen.
+ */
+@Component
+public class FleetStateStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FleetStateStore.class);
+
+    private static final int MAGIC = 0x43424653;
+    private static final int FORMAT_VERSION = 1;
+
+    private final FleetRegistry fleetRegistry;
+    private final BusTrackingService busTrackingService;
+    private final AssignmentRegistry assignmentRegistry;
+    private final boolean enabled;
+    private final Path file;
+    private final long maxAgeMs;
+    private final long staleTtlMs;
+
+    private volatile Map<String, Object> lastSnapshot = Collections.emptyMap();
+    private volatile Map<String, Object> lastRestore = Collections.emptyMap();
+
+    public FleetStateStore(BusTrackingService busTrackingService,
+                           @Value("${citybus.fleet-snapshot.enabled:true}") boolean enabled,
+                           @Value("${citybus.fleet-snapshot.file:data/fleet-snapshot.bin}") String file,
+                           @Value("${citybus.fleet-snapshot.max-age-s:900}") long maxAgeSeconds,
+                           @Value("${citybus.fleet-snapshot.stale-ttl-s:600}") long staleTtlSeconds) {
+        this.busTrackingService = busTrackingService;
+        this.fleetRegistry = busTrackingService.getFleetRegistry();
+        this.assignmentRegistry = busTrackingService.getAssignmentRegistry();
+        this.enabled = enabled;
+        this.file = Paths.get(file);
+        this.maxAgeMs = maxAgeSeconds * 1000;
+        this.staleTtlMs = staleTtlSeconds * 1000;
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!enabled || !Files.exists(file)) return;
+
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long takenAt;
+        List<BusAssignment> assignments = new ArrayList<>();
+        Map<String, BusLocation> locations = new LinkedHashMap<>();
+        List<SavedDriver> savedDrivers = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("Ignoring fleet snapshot {}: unknown format", file);
+                return;
+            }
+            takenAt = in.readLong();
+            if (now - takenAt > maxAgeMs) {
+                log.info("Ignoring fleet snapshot {}: taken {}s ago", file, (now - takenAt) / 1000);
+                return;
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                assignments.add(new BusAssignment(in.readUTF(), in.readUTF(), readNullable(in), in.readUTF(), in.readLong()));
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                String busId = in.readUTF();
+                String routeId = readNullable(in);
+                double[] coords = { in.readDouble(), in.readDouble() };
+                locations.put(busId, new BusLocation(routeId, coords, readNullable(in), readNullable(in)));
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                String driverId = in.readUTF();
+                String busId = in.readUTF();
+                boolean visible = in.readBoolean();
+                long lastSeen = in.readLong();
+                Position position = in.readBoolean()
+                        ? new Position(in.readDouble(), in.readDouble(), in.readDouble(), in.readLong())
+                        : null;
+                if (now - lastSeen <= staleTtlMs) {
+                    savedDrivers.add(new SavedDriver(driverId, busId, visible, lastSeen, position));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error restoring fleet snapshot {}: {}", file, e.getMessage());
+            return;
+        }
+
+        int restoredAssignments = 0;
+        for (BusAssignment assignment : assignments) {
+            if (assignmentRegistry.restore(assignment)) {
+                restoredAssignments++;
+            }
+        }
+
+        int restoredDrivers = 0;
+        for (SavedDriver saved : savedDrivers) {
+            // A driver that reconnected while the snapshot was loading wins
+            if (fleetRegistry.getDriver(saved.driverId) != null) continue;
+
+            DriverSession driver = new DriverSession(null, saved.driverId, saved.busId,
+                    fleetRegistry.getBusIndex(saved.busId), saved.lastSeen);
+            if (saved.position != null) {
+                driver.updatePosition(saved.position);
+                driver.touch(saved.lastSeen);
+            }
+            driver.setVisible(saved.visible);
+            driver.setStatus(DriverSession.STATUS_STALE);
+            fleetRegistry.registerDriver(driver);
+
+            BusLocation location = locations.get(saved.busId);
+            if (location != null) {
+                busTrackingService.updateBusLocation(saved.busId, location);
+            }
+            restoredDrivers++;
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("file", file.toString());
+        stats.put("takenAt", takenAt);
+        stats.put("drivers", restoredDrivers);
+        stats.put("assignments", restoredAssignments);
+        stats.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        lastRestore = Collections.unmodifiableMap(stats);
+        log.info("Restored fleet snapshot: {}", stats);
+    }
+
+    // Synchronized because the scheduled run and the shutdown run write the same temporary file
+    @Scheduled(fixedDelayString = "${citybus.fleet-snapshot.interval-ms:15000}")
+    public synchronized void snapshot() {
+        if (!enabled) return;
+
+        long start = System.nanoTime();
+        long takenAt = System.currentTimeMillis();
+        Collection<BusAssignment> assignments = assignmentRegistry.getAll();
+        // Drivers on other nodes are theirs to snapshot
+        List<DriverSession> drivers = new ArrayList<>();
+        for (DriverSession driver : fleetRegistry.getDrivers()) {
+            if (!driver.isRemote()) {
+                drivers.add(driver);
+            }
+        }
+        List<Map.Entry<String, BusLocation>> located = new ArrayList<>();
+        for (Map.Entry<String, BusLocation> entry : busTrackingService.getBusLocations().entrySet()) {
+            double[] coords = entry.getValue().getCoords();
+            if (coords != null && coords.length >= 2) {
+                located.add(entry);
+            }
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(takenAt);
+
+                out.writeInt(assignments.size());
+                for (BusAssignment assignment : assignments) {
+                    out.writeUTF(assignment.getBusId());
+                    out.writeUTF(assignment.getRouteId());
+                    writeNullable(out, assignment.getTripId());
+                    out.writeUTF(assignment.getSource());
+                    out.writeLong(assignment.getAssignedAt());
+                }
+
+                out.writeInt(located.size());
+                for (Map.Entry<String, BusLocation> entry : located) {
+                    BusLocation location = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    writeNullable(out, location.getRouteId());
+                    out.writeDouble(location.getCoords()[0]);
+                    out.writeDouble(location.getCoords()[1]);
+                    writeNullable(out, location.getNextStop());
+                    writeNullable(out, location.getSource());
+                }
+
+                out.writeInt(drivers.size());
+                for (DriverSession driver : drivers) {
+                    Position position = driver.getPosition();
+                    out.writeUTF(driver.getDriverId());
+                    out.writeUTF(driver.getBusId());
+                    out.writeBoolean(driver.isVisible());
+                    out.writeLong(driver.getLastSeen());
+                    out.writeBoolean(position != null);
+                    if (position != null) {
+                        out.writeDouble(position.getLat());
+                        out.writeDouble(position.getLng());
+                        out.writeDouble(position.getAccuracy());
+                        out.writeLong(position.getTimestamp());
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("file", file.toString());
+            stats.put("takenAt", takenAt);
+            stats.put("drivers", drivers.size());
+            stats.put("busLocations", located.size());
+            stats.put("assignments", assignments.size());
+            stats.put("bytes", Files.size(file));
+            stats.put("durationMicros", (System.nanoTime() - start) / 1000);
+            lastSnapshot = Collections.unmodifiableMap(stats);
+        } catch (IOException e) {
+            log.error("Error writing fleet snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    // A final snapshot on shutdown makes a deploy restart from state seconds old. This runs on the
+    // context-closed event, before the web server stops and closing sessions remove their drivers.
+    @EventListener
+    public void onContextClosed(ContextClosedEvent event) {
+        snapshot();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("lastSnapshot", lastSnapshot);
+        stats.put("lastRestore", lastRestore);
+        return stats;
+    }
+
+    // One driver as read from the file, registered only once the whole file has been read
+    private static final class SavedDriver {
+        final String driverId;
+        final String busId;
+        final boolean visible;
+        final long lastSeen;
+        final Position position;
+
+        SavedDriver(String driverId, String busId, boolean visible, long lastSeen, Position position) {
+            this.driverId = driverId;
+            this.busId = busId;
+            this.visible = visible;
+            this.lastSeen = lastSeen;
+            this.position = position;
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,135 @@
+package com.citybus.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects buses arriving at and departing from stops.
+ *
+ * Each route's stops are turned into circles indexed by polyline segment
+ * ({@link StopGeofences}), built at startup and again when the routes are
+ * reloaded, off the ingest path. A matched position is tested only
+ * against the stops next to its segment, so the cost per update does not grow
+ * with the number of stops or routes. A bus arrives when it comes within the
+ * stop radius and departs once it is beyond the larger exit radius, so GPS
+ * jitter at the edge of a stop does not produce a stream of events.
+ */
+@Service
+public class GeofenceService {
+
+    private final BusTrackingService busTrackingService;
+    private final double stopRadiusMeters;
+    private final double exitRadiusMeters;
+
+    private final Map<String, StopGeofences> fencesByRoute = new ConcurrentHashMap<>();
+    private final Map<String, AtStop> stopByBus = new ConcurrentHashMap<>();
+
+    public GeofenceService(BusTrackingService busTrackingService,
+                           @Value("${citybus.geofence.stop-radius-m:30}") double stopRadiusMeters,
+                           @Value("${citybus.geofence.exit-radius-m:45}") double exitRadiusMeters) {
+        this.busTrackingService = busTrackingService;
+        this.stopRadiusMeters = stopRadiusMeters;
+        this.exitRadiusMeters = Math.max(stopRadiusMeters, exitRadiusMeters);
+    }
+
+    private static final class AtStop {
+        final StopGeofences fences;
+        final int stop;
+        final long arrivedAt;
+
+        AtStop(StopGeofences fences, int stop, long arrivedAt) {
+            this.fences = fences;
+            this.stop = stop;
+            this.arrivedAt = arrivedAt;
+        }
+    }
+
+    @PostConstruct
+    public void buildFences() {
+        rebuild(busTrackingService.getRoutes().keySet());
+    }
+
+    // Runs after BusTrackingService has swapped in the new route geometry
+    @EventListener
+    public void onRoutesReloaded(RoutesReloadedEvent event) {
+        rebuild(event.getRoutes().keySet());
+    }
+
+    private void rebuild(Collection<String> routeIds) {
+        fencesByRoute.keySet().retainAll(routeIds);
+        for (String routeId : routeIds) {
+            RouteGeometry geometry = busTrackingService.getRouteGeometry(routeId);
+            if (geometry != null) {
+                fencesFor(routeId, geometry);
+            } else {
+                fencesByRoute.remove(routeId);
+            }
+        }
+    }
+
+    // Fences for this exact geometry; built once per geometry however many threads ask
+    private StopGeofences fencesFor(String routeId, RouteGeometry geometry) {
+        return fencesByRoute.compute(routeId, (id, fences) ->
+                fences != null && fences.getGeometry() == geometry ? fences : new StopGeofences(geometry, stopRadiusMeters));
+    }
+
+    /**
+     * Evaluates a matched position of a bus and returns the events it causes:
+     * usually none, an arrival or a departure, or both when the bus moves
+     * straight from one stop's circle into the next. Positions too far off
+     * the route are ignored and leave the bus where it was.
+     */
+    public List<StopEvent> onBusProgress(String busId, RouteMatch match, long timestamp) {
+        if (match == null || !match.isMatched()) return Collections.emptyList();
+
+        RouteGeometry geometry = busTrackingService.getRouteGeometry(match.getRouteId());
+        if (geometry == null) return Collections.emptyList();
+
+        StopGeofences fences = fencesByRoute.get(match.getRouteId());
+        if (fences == null || fences.getGeometry() != geometry) {
+            // Only in the moment between a reload swapping the geometry and the listener rebuilding
+            fences = fencesFor(match.getRouteId(), geometry);
+        }
+        double x = geometry.toX(match.getLng());
+        double y = geometry.toY(match.getLat());
+
+        // A stop on another route, or on a route that has since been reloaded, is dropped without an event
+        AtStop current = stopByBus.get(busId);
+        if (current != null && current.fences != fences) {
+            stopByBus.remove(busId);
+            current = null;
+        }
+        if (current != null && fences.isWithin(current.stop, x, y, exitRadiusMeters)) {
+            return Collections.emptyList();
+        }
+
+        int stop = fences.stopAt(x, y, match.getSegment());
+        if (current == null && stop < 0) return Collections.emptyList();
+
+        List<StopEvent> events = new ArrayList<>(2);
+        if (current != null) {
+            stopByBus.remove(busId);
+            events.add(new StopEvent(StopEvent.DEPARTED, busId, match.getRouteId(), current.stop,
+                    geometry.getStopName(current.stop), timestamp, current.arrivedAt));
+        }
+        if (stop >= 0) {
+            stopByBus.put(busId, new AtStop(fences, stop, timestamp));
+            events.add(new StopEvent(StopEvent.ARRIVED, busId, match.getRouteId(), stop,
+                    geometry.getStopName(stop), timestamp, timestamp));
+        }
+        return events;
+    }
+
+    public void forget(String busId) {
+        stopByBus.remove(busId);
+    }
+}
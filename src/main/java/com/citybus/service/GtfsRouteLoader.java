@@ -0,0 +1,247 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+import com.citybus.model.Stop;
+import com.citybus.util.CsvReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds routes from a GTFS feed directory.
+ *
+ * Each route is represented by one trip, preferring direction 0 and a trip
+ * with a shape: the route path is that trip's shape and its stops are the
+ * trip's stop_times in sequence order. Trips are read first, so the large
+ * shapes.txt and stop_times.txt files are streamed once and only rows for the
+ * chosen trips are kept. Stops shared between routes share one {@link Stop}.
+ */
+final class GtfsRouteLoader {
+
+    private GtfsRouteLoader() {
+    }
+
+    static Map<String, Route> load(Path directory) throws IOException {
+        Map<String, String> routeNames = readRouteNames(directory.resolve("routes.txt"));
+
+        // route_id -> chosen trip, and the reverse lookups needed while streaming
+        Map<String, String[]> tripByRoute = chooseTrips(directory.resolve("trips.txt"));
+        Map<String, String> routeByTrip = new HashMap<>();
+        Map<String, Points> shapes = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : tripByRoute.entrySet()) {
+            routeByTrip.put(entry.getValue()[0], entry.getKey());
+            String shapeId = entry.getValue()[1];
+            if (!shapeId.isEmpty()) {
+                shapes.put(shapeId, new Points());
+            }
+        }
+
+        Path shapesFile = directory.resolve("shapes.txt");
+        if (Files.exists(shapesFile)) {
+            readShapes(shapesFile, shapes);
+        }
+        Map<String, StopSequence> stopSequences = readStopTimes(directory.resolve("stop_times.txt"), routeByTrip);
+        Map<String, Stop> stops = readStops(directory.resolve("stops.txt"), stopSequences);
+
+        Map<String, Route> routes = new LinkedHashMap<>();
+        for (Map.Entry<String, String[]> entry : tripByRoute.entrySet()) {
+            String routeId = entry.getKey();
+            StopSequence sequence = stopSequences.get(entry.getValue()[0]);
+            List<Stop> routeStops = sequence != null ? sequence.toStops(stops) : new ArrayList<>();
+
+            Points shape = shapes.get(entry.getValue()[1]);
+            List<double[]> path;
+            if (shape != null && shape.size >= 2) {
+                path = shape.toPath();
+            } else {
+                // No usable shape: fall back to straight lines between the stops
+                path = new ArrayList<>(routeStops.size());
+                for (Stop stop : routeStops) {
+                    path.add(stop.getCoords());
+                }
+            }
+            if (path.size() < 2) continue;
+
+            routes.put(routeId, new Route(routeNames.getOrDefault(routeId, routeId), path, routeStops));
+        }
+        return routes;
+    }
+
+    private static CsvReader open(Path file) throws IOException {
+        return new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> readRouteNames(Path file) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        if (!Files.exists(file)) return names;
+        try (CsvReader csv = open(file)) {
+            int id = csv.requireColumn("route_id");
+            int longName = csv.column("route_long_name");
+            int shortName = csv.column("route_short_name");
+            while (csv.next()) {
+                String name = csv.get(longName);
+                names.put(csv.get(id), name.isEmpty() ? csv.get(shortName) : name);
+            }
+        }
+        return names;
+    }
+
+    // route_id -> {trip_id, shape_id}, in first-seen route order
+    private static Map<String, String[]> chooseTrips(Path file) throws IOException {
+        Map<String, String[]> chosen = new LinkedHashMap<>();
+        Map<String, Integer> scores = new HashMap<>();
+        try (CsvReader csv = open(file)) {
+            int routeColumn = csv.requireColumn("route_id");
+            int tripColumn = csv.requireColumn("trip_id");
+            int shapeColumn = csv.column("shape_id");
+            int directionColumn = csv.column("direction_id");
+            while (csv.next()) {
+                String routeId = csv.get(routeColumn);
+                String shapeId = csv.get(shapeColumn);
+                String direction = csv.get(directionColumn);
+                int score = (shapeId.isEmpty() ? 0 : 2) + (direction.isEmpty() || direction.equals("0") ? 1 : 0);
+
+                Integer best = scores.get(routeId);
+                if (best == null || score > best) {
+                    scores.put(routeId, score);
+                    chosen.put(routeId, new String[] { csv.get(tripColumn), shapeId });
+                }
+            }
+        }
+        return chosen;
+    }
+
+    private static void readShapes(Path file, Map<String, Points> shapes) throws IOException {
+        try (CsvReader csv = open(file)) {
+            int idColumn = csv.requireColumn("shape_id");
+            int latColumn = csv.requireColumn("shape_pt_lat");
+            int lngColumn = csv.requireColumn("shape_pt_lon");
+            int sequenceColumn = csv.requireColumn("shape_pt_sequence");
+            while (csv.next()) {
+                Points points = shapes.get(csv.get(idColumn));
+                if (points != null) {
+                    points.add(Integer.parseInt(csv.get(sequenceColumn).trim()),
+                            Double.parseDouble(csv.get(latColumn)), Double.parseDouble(csv.get(lngColumn)));
+                }
+            }
+        }
+    }
+
+    private static Map<String, StopSequence> readStopTimes(Path file, Map<String, String> routeByTrip) throws IOException {
+        Map<String, StopSequence> sequences = new HashMap<>();
+        try (CsvReader csv = open(file)) {
+            int tripColumn = csv.requireColumn("trip_id");
+            int stopColumn = csv.requireColumn("stop_id");
+            int sequenceColumn = csv.requireColumn("stop_sequence");
+            while (csv.next()) {
+                String tripId = csv.get(tripColumn);
+                if (!routeByTrip.containsKey(tripId)) continue;
+                sequences.computeIfAbsent(tripId, id -> new StopSequence())
+                        .add(Integer.parseInt(csv.get(sequenceColumn).trim()), csv.get(stopColumn));
+            }
+        }
+        return sequences;
+    }
+
+    private static Map<String, Stop> readStops(Path file, Map<String, StopSequence> sequences) throws IOException {
+        Map<String, Stop> needed = new HashMap<>();
+        for (StopSequence sequence : sequences.values()) {
+            for (int i = 0; i < sequence.size; i++) {
+                needed.put(sequence.stopIds[i], null);
+            }
+        }
+
+        try (CsvReader csv = open(file)) {
+            int idColumn = csv.requireColumn("stop_id");
+            int nameColumn = csv.requireColumn("stop_name");
+            int latColumn = csv.requireColumn("stop_lat");
+            int lngColumn = csv.requireColumn("stop_lon");
+            while (csv.next()) {
+                String stopId = csv.get(idColumn);
+                if (!needed.containsKey(stopId)) continue;
+                needed.put(stopId, new Stop(csv.get(nameColumn), new double[] {
+                        Double.parseDouble(csv.get(latColumn)), Double.parseDouble(csv.get(lngColumn)) }));
+            }
+        }
+        return needed;
+    }
+
+    // Growable parallel arrays of shape points, sorted by sequence on output
+    private static final class Points {
+        int[] sequences = new int[64];
+        double[] lats = new double[64];
+        double[] lngs = new double[64];
+        int size;
+        boolean sorted = true;
+
+        void add(int sequence, double lat, double lng) {
+            if (size == sequences.length) {
+                sequences = Arrays.copyOf(sequences, size * 2);
+                lats = Arrays.copyOf(lats, size * 2);
+                lngs = Arrays.copyOf(lngs, size * 2);
+            }
+            if (size > 0 && sequence < sequences[size - 1]) {
+                sorted = false;
+            }
+            sequences[size] = sequence;
+            lats[size] = lat;
+            lngs[size] = lng;
+            size++;
+        }
+
+        List<double[]> toPath() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            if (!sorted) {
+                Arrays.sort(order, (a, b) -> Integer.compare(sequences[a], sequences[b]));
+            }
+            List<double[]> path = new ArrayList<>(size);
+            for (Integer i : order) {
+                path.add(new double[] { lats[i], lngs[i] });
+            }
+            return path;
+        }
+    }
+
+    private static final class StopSequence {
+        int[] sequences = new int[32];
+        String[] stopIds = new String[32];
+        int size;
+
+        void add(int sequence, String stopId) {
+            if (size == sequences.length) {
+                sequences = Arrays.copyOf(sequences, size * 2);
+                stopIds = Arrays.copyOf(stopIds, size * 2);
+            }
+            sequences[size] = sequence;
+            stopIds[size] = stopId;
+            size++;
+        }
+
+        List<Stop> toStops(Map<String, Stop> stops) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(sequences[a], sequences[b]));
+            List<Stop> result = new ArrayList<>(size);
+            for (Integer i : order) {
+                Stop stop = stops.get(stopIds[i]);
+                if (stop != null) {
+                    result.add(stop);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.citybus.service;
+
+import com.citybus.model.Position;
+import com.citybus.model.RiderSession;
+import com.citybus.util.DistanceCalculator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental proximity engine for "your bus is nearby" alerts.
+ *
+ * Riders are bucketed into a fixed lat/lng grid whose cells are about one
+ * alert radius tall, so a bus position only has to be checked against the
+ * riders in the handful of cells around it instead of every connected rider.
+ *
+ * Alerts are de-duplicated per rider and bus with hysteresis: once a rider
+ * has been alerted for a bus, that pair is only re-armed after the bus moves
+ * beyond the re-arm radius (or the rider stops tracking it), so the alert
+ * does not fire again on every ping while the bus is close.
+ */
+public class ProximityIndex {
+
+    private static final double KM_PER_DEGREE_LAT = 110.574;
+    private static final double KM_PER_DEGREE_LNG_AT_EQUATOR = 111.320;
+    // Keeps the longitude span finite at the poles
+    private static final double MIN_COS_LAT = 1e-6;
+
+    private final double thresholdKm;
+    private final double rearmKm;
+    private final double cellSizeDeg;
+    private final int firstCol;
+    private final int lastCol;
+
+    private final Map<String, Rider> riders = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Rider>> cells = new ConcurrentHashMap<>();
+    private final Map<String, Set<Rider>> alertedByBus = new ConcurrentHashMap<>();
+
+    public ProximityIndex(double thresholdKm, double rearmKm) {
+        this.thresholdKm = thresholdKm;
+        this.rearmKm = rearmKm;
+        this.cellSizeDeg = thresholdKm / KM_PER_DEGREE_LAT;
+        this.firstCol = col(-180);
+        this.lastCol = col(180);
+    }
+
+    // Grid entry for a rider; the position itself is read from the shared RiderSession snapshot
+    static final class Rider {
+        final RiderSession session;
+        volatile Position indexedPosition;
+        volatile long cell;
+
+        Rider(RiderSession session) {
+            this.session = session;
+        }
+    }
+
+    public void addRider(RiderSession session) {
+        Rider previous = riders.put(session.getSessionId(), new Rider(session));
+        if (previous != null) {
+            synchronized (previous) {
+                removeFromCell(previous);
+            }
+        }
+    }
+
+    public void removeRider(String sessionId) {
+        Rider rider = riders.remove(sessionId);
+        if (rider != null) {
+            synchronized (rider) {
+                removeFromCell(rider);
+            }
+            String busId = rider.session.getTrackingBusId();
+            if (busId != null) {
+                removeAlert(busId, rider);
+            }
+        }
+    }
+
+    // Re-buckets the rider after its RiderSession position changed
+    public void updateRiderLocation(String sessionId) {
+        Rider rider = riders.get(sessionId);
+        if (rider == null) return;
+
+        synchronized (rider) {
+            if (riders.get(sessionId) != rider) return;
+            Position position = rider.session.getPosition();
+            if (position == null) return;
+
+            long cell = cellKey(row(position.getLat()), col(position.getLng()));
+            if (rider.indexedPosition == null || rider.cell != cell) {
+                removeFromCell(rider);
+                rider.cell = cell;
+                cells.computeIfAbsent(cell, key -> ConcurrentHashMap.newKeySet()).add(rider);
+            }
+            rider.indexedPosition = position;
+        }
+    }
+
+    // Drops any alert state held for the bus the rider tracked before
+    public void trackingBusChanged(String sessionId, String previousBusId) {
+        Rider rider = riders.get(sessionId);
+        if (rider != null && previousBusId != null && !previousBusId.equals(rider.session.getTrackingBusId())) {
+            removeAlert(previousBusId, rider);
+        }
+    }
+
+    /**
+     * Evaluates a new position of a bus against nearby riders tracking it and
+     * returns the alerts that should fire now.
+     */
+    public List<Map<String, Object>> onBusLocation(String busId, double lat, double lng) {
+        rearm(busId, lat, lng);
+
+        double latSpan = thresholdKm / KM_PER_DEGREE_LAT;
+        double cosLat = Math.max(Math.cos(Math.toRadians(lat)), MIN_COS_LAT);
+        double lngSpan = thresholdKm / (KM_PER_DEGREE_LNG_AT_EQUATOR * cosLat);
+        int minRow = row(lat - latSpan);
+        int maxRow = row(lat + latSpan);
+        // Near a pole the circle covers every longitude; otherwise stay within the grid's columns
+        int minCol = lngSpan >= 180 ? firstCol : Math.max(firstCol, col(lng - lngSpan));
+        int maxCol = lngSpan >= 180 ? lastCol : Math.min(lastCol, col(lng + lngSpan));
+
+        DistanceCalculator.Radius alertRadius = new DistanceCalculator.Radius(lat, lng, thresholdKm);
+        List<Map<String, Object>> notifications = null;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Set<Rider> cellRiders = cells.get(cellKey(row, col));
+                if (cellRiders == null) continue;
+
+                for (Rider rider : cellRiders) {
+                    if (!busId.equals(rider.session.getTrackingBusId())) continue;
+
+                    Position position = rider.indexedPosition;
+                    if (alertRadius.contains(position.getLat(), position.getLng()) && markAlerted(busId, rider)) {
+                        if (notifications == null) {
+                            notifications = new ArrayList<>();
+                        }
+                        double distance = DistanceCalculator.getDistanceFromLatLonInKm(
+                                position.getLat(), position.getLng(), lat, lng);
+                        notifications.add(createNotification(rider, busId, distance));
+                    }
+                }
+            }
+        }
+
+        return notifications != null ? notifications : Collections.emptyList();
+    }
+
+    // Re-arm riders already alerted for this bus once it has moved away from them
+    private void rearm(String busId, double lat, double lng) {
+        Set<Rider> alerted = alertedByBus.get(busId);
+        if (alerted == null) return;
+
+        DistanceCalculator.Radius rearmRadius = new DistanceCalculator.Radius(lat, lng, rearmKm);
+        alerted.removeIf(rider -> !busId.equals(rider.session.getTrackingBusId()) || isBeyond(rider, rearmRadius));
+    }
+
+    private static boolean isBeyond(Rider rider, DistanceCalculator.Radius radius) {
+        Position position = rider.indexedPosition;
+        return position == null || !radius.contains(position.getLat(), position.getLng());
+    }
+
+    private boolean markAlerted(String busId, Rider rider) {
+        return alertedByBus.computeIfAbsent(busId, key -> ConcurrentHashMap.newKeySet()).add(rider);
+    }
+
+    private void removeAlert(String busId, Rider rider) {
+        alertedByBus.computeIfPresent(busId, (key, alerted) -> {
+            alerted.remove(rider);
+            return alerted.isEmpty() ? null : alerted;
+        });
+    }
+
+    private void removeFromCell(Rider rider) {
+        if (rider.indexedPosition == null) return;
+        cells.computeIfPresent(rider.cell, (key, cellRiders) -> {
+            cellRiders.remove(rider);
+            return cellRiders.isEmpty() ? null : cellRiders;
+        });
+    }
+
+    private Map<String, Object> createNotification(Rider rider, String busId, double distance) {
+        Map<String, Object> notification = new HashMap<>();
+        notification.put("sessionId", rider.session.getSessionId());
+        notification.put("userId", rider.session.getUserId());
+        notification.put("busId", busId);
+        notification.put("distance", String.format("%.2f", distance));
+        notification.put("message", String.format("Your tracking bus %s is %.2f km away!", busId, distance));
+        return notification;
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / cellSizeDeg);
+    }
+
+    private int col(double lng) {
+        return (int) Math.floor(lng / cellSizeDeg);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    public int getRiderCount() {
+        return riders.size();
+    }
+
+    public int getOccupiedCellCount() {
+        return cells.size();
+    }
+}
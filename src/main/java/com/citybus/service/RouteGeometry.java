@@ -0,0 +1,249 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+import com.citybus.model.Stop;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed segment data for one route polyline, built once when routes are
+ * loaded and shared read-only by every map-matching call.
+ *
+ * Vertices are projected into a local equirectangular plane in metres around
+ * the route's centre, which is accurate to well under a metre across a city.
+ * Per-segment bounding boxes let a nearest-segment search skip segments that
+ * cannot beat the best candidate found so far. Stops are placed along the
+ * route in their listed order, so their distances never decrease.
+ */
+public final class RouteGeometry {
+
+    private static final double METERS_PER_DEGREE_LAT = 110574.0;
+    private static final double METERS_PER_DEGREE_LNG_AT_EQUATOR = 111320.0;
+
+    // A stop further than this from the polyline keeps the previous stop's distance
+    private static final double MAX_STOP_OFFSET_METERS = 500;
+
+    private final String routeId;
+    private final double originLat;
+    private final double originLng;
+    private final double metersPerDegreeLng;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] cumulative;
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+
+    private final String[] stopNames;
+    private final double[] stopDistances;
+    // Projected stop positions; NaN for a stop listed without coordinates
+    private final double[] stopXs;
+    private final double[] stopYs;
+
+    private RouteGeometry(String routeId, List<double[]> path, List<Stop> stops) {
+        this.routeId = routeId;
+
+        double latSum = 0;
+        double lngSum = 0;
+        for (double[] point : path) {
+            latSum += point[0];
+            lngSum += point[1];
+        }
+        this.originLat = latSum / path.size();
+        this.originLng = lngSum / path.size();
+        this.metersPerDegreeLng = METERS_PER_DEGREE_LNG_AT_EQUATOR * Math.cos(Math.toRadians(originLat));
+
+        int n = path.size();
+        xs = new double[n];
+        ys = new double[n];
+        cumulative = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = toX(path.get(i)[1]);
+            ys[i] = toY(path.get(i)[0]);
+            if (i > 0) {
+                cumulative[i] = cumulative[i - 1] + Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+            }
+        }
+
+        int segments = Math.max(0, n - 1);
+        minX = new double[segments];
+        minY = new double[segments];
+        maxX = new double[segments];
+        maxY = new double[segments];
+        for (int i = 0; i < segments; i++) {
+            minX[i] = Math.min(xs[i], xs[i + 1]);
+            maxX[i] = Math.max(xs[i], xs[i + 1]);
+            minY[i] = Math.min(ys[i], ys[i + 1]);
+            maxY[i] = Math.max(ys[i], ys[i + 1]);
+        }
+
+        int stopCount = stops != null ? stops.size() : 0;
+        stopNames = new String[stopCount];
+        stopDistances = new double[stopCount];
+        stopXs = new double[stopCount];
+        stopYs = new double[stopCount];
+        Arrays.fill(stopXs, Double.NaN);
+        Arrays.fill(stopYs, Double.NaN);
+        int fromSegment = 0;
+        double previous = 0;
+        for (int i = 0; i < stopCount; i++) {
+            Stop stop = stops.get(i);
+            stopNames[i] = stop.getName();
+            stopDistances[i] = previous;
+            if (stop.getCoords() == null) continue;
+
+            double x = toX(stop.getCoords()[1]);
+            double y = toY(stop.getCoords()[0]);
+            stopXs[i] = x;
+            stopYs[i] = y;
+            if (segments == 0) continue;
+
+            int segment = nearestSegment(x, y, fromSegment, segments);
+            if (distanceToSegment(x, y, segment) <= MAX_STOP_OFFSET_METERS) {
+                stopDistances[i] = Math.max(previous, distanceAlong(x, y, segment));
+                fromSegment = segment;
+                previous = stopDistances[i];
+            }
+        }
+    }
+
+    public static RouteGeometry of(String routeId, Route route) {
+        if (route.getPath() == null || route.getPath().size() < 2) {
+            throw new IllegalArgumentException("Route " + routeId + " needs at least two path points");
+        }
+        return new RouteGeometry(routeId, route.getPath(), route.getStops());
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public int getSegmentCount() {
+        return minX.length;
+    }
+
+    public double getLength() {
+        return cumulative[cumulative.length - 1];
+    }
+
+    // Distance along the route at the start of a segment (or the end, for the last vertex)
+    double getVertexDistance(int vertex) {
+        return cumulative[vertex];
+    }
+
+    double toX(double lng) {
+        return (lng - originLng) * metersPerDegreeLng;
+    }
+
+    double toY(double lat) {
+        return (lat - originLat) * METERS_PER_DEGREE_LAT;
+    }
+
+    double toLat(double y) {
+        return originLat + y / METERS_PER_DEGREE_LAT;
+    }
+
+    double toLng(double x) {
+        return originLng + x / metersPerDegreeLng;
+    }
+
+    /**
+     * Index of the segment in {@code [from, to)} closest to the point. Segments
+     * whose bounding box is already further away than the best match are
+     * skipped without projecting onto them.
+     */
+    int nearestSegment(double x, double y, int from, int to) {
+        int best = from;
+        double bestSq = Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double dx = Math.max(0, Math.max(minX[i] - x, x - maxX[i]));
+            double dy = Math.max(0, Math.max(minY[i] - y, y - maxY[i]));
+            if (dx * dx + dy * dy >= bestSq) continue;
+
+            double distanceSq = distanceSqToSegment(x, y, i);
+            if (distanceSq < bestSq) {
+                bestSq = distanceSq;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    double distanceToSegment(double x, double y, int segment) {
+        return Math.sqrt(distanceSqToSegment(x, y, segment));
+    }
+
+    // Distance along the route of the point's projection onto the segment
+    double distanceAlong(double x, double y, int segment) {
+        return cumulative[segment] + fraction(x, y, segment) * (cumulative[segment + 1] - cumulative[segment]);
+    }
+
+    // Snapped point as {lat, lng}
+    double[] snap(double x, double y, int segment) {
+        double t = fraction(x, y, segment);
+        double px = xs[segment] + t * (xs[segment + 1] - xs[segment]);
+        double py = ys[segment] + t * (ys[segment + 1] - ys[segment]);
+        return new double[] { toLat(py), toLng(px) };
+    }
+
+    /**
+     * Index of the first stop strictly ahead of the given distance along the
+     * route, allowing a small tolerance so a bus standing at a stop already
+     * reports the following one; -1 past the last stop.
+     */
+    int nextStopIndex(double distanceAlong, double toleranceMeters) {
+        int index = Arrays.binarySearch(stopDistances, distanceAlong + toleranceMeters);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // Step past every stop sitting exactly at this distance
+            while (index < stopDistances.length && stopDistances[index] <= distanceAlong + toleranceMeters) {
+                index++;
+            }
+        }
+        return index < stopDistances.length ? index : -1;
+    }
+
+    String getStopName(int index) {
+        return stopNames[index];
+    }
+
+    double getStopDistance(int index) {
+        return stopDistances[index];
+    }
+
+    int getStopCount() {
+        return stopNames.length;
+    }
+
+    double getStopX(int index) {
+        return stopXs[index];
+    }
+
+    double getStopY(int index) {
+        return stopYs[index];
+    }
+
+    private double fraction(double x, double y, int segment) {
+        double ax = xs[segment];
+        double ay = ys[segment];
+        double vx = xs[segment + 1] - ax;
+        double vy = ys[segment + 1] - ay;
+        double lengthSq = vx * vx + vy * vy;
+        if (lengthSq == 0) return 0;
+        double t = ((x - ax) * vx + (y - ay) * vy) / lengthSq;
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+
+    private double distanceSqToSegment(double x, double y, int segment) {
+        double t = fraction(x, y, segment);
+        double px = xs[segment] + t * (xs[segment + 1] - xs[segment]);
+        double py = ys[segment] + t * (ys[segment + 1] - ys[segment]);
+        double dx = x - px;
+        double dy = y - py;
+        return dx * dx + dy * dy;
+    }
+}
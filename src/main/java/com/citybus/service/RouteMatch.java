@@ -0,0 +1,75 @@
+package com.citybus.service;
+
+/**
+ * Result of matching one bus position to its route. When the position is too
+ * far from the polyline to be trusted, {@code matched} is false, the raw
+ * coordinates are passed through and the progress is the last known one.
+ */
+public final class RouteMatch {
+    private final String routeId;
+    private final double lat;
+    private final double lng;
+    private final boolean matched;
+    private final int segment;
+    private final double distanceAlong;
+    private final double offsetMeters;
+    private final String nextStop;
+    private final int nextStopIndex;
+
+    RouteMatch(String routeId, double lat, double lng, boolean matched, int segment,
+               double distanceAlong, double offsetMeters, String nextStop, int nextStopIndex) {
+        this.routeId = routeId;
+        this.lat = lat;
+        this.lng = lng;
+        this.matched = matched;
+        this.segment = segment;
+        this.distanceAlong = distanceAlong;
+        this.offsetMeters = offsetMeters;
+        this.nextStop = nextStop;
+        this.nextStopIndex = nextStopIndex;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public double[] toCoords() {
+        return new double[] { lat, lng };
+    }
+
+    public boolean isMatched() {
+        return matched;
+    }
+
+    // Index of the polyline segment the bus is on
+    public int getSegment() {
+        return segment;
+    }
+
+    // Metres from the start of the route
+    public double getDistanceAlong() {
+        return distanceAlong;
+    }
+
+    // Metres between the raw position and the polyline
+    public double getOffsetMeters() {
+        return offsetMeters;
+    }
+
+    public String getNextStop() {
+        return nextStop;
+    }
+
+    // Position of the next stop in Route.stops, or -1 past the last stop
+    public int getNextStopIndex() {
+        return nextStopIndex;
+    }
+}
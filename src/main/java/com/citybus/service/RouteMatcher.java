@@ -0,0 +1,117 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snaps bus positions onto their route polyline and tracks each bus's
+ * progress along it.
+ *
+ * Buses move forward along a route, so a bus's next position is searched for
+ * in a short window of segments starting just behind its last matched
+ * segment. Only when nothing in that window is close enough (first fix, a
+ * detour, a jump after a GPS gap) does the search fall back to the whole
+ * polyline, which the bounding-box prefilter in {@link RouteGeometry} keeps
+ * cheap.
+ */
+public class RouteMatcher {
+
+    private static final int BACKWARD_WINDOW = 1;
+    private static final int FORWARD_WINDOW = 8;
+
+    // A bus standing within this distance of a stop already reports the following one
+    private static final double STOP_TOLERANCE_METERS = 15;
+
+    private final double maxOffsetMeters;
+
+    private volatile Map<String, RouteGeometry> geometries = Collections.emptyMap();
+    private final Map<String, Progress> progressByBus = new ConcurrentHashMap<>();
+
+    public RouteMatcher(double maxOffsetMeters) {
+        this.maxOffsetMeters = maxOffsetMeters;
+    }
+
+    private static final class Progress {
+        final RouteGeometry geometry;
+        final int segment;
+        final double distanceAlong;
+
+        Progress(RouteGeometry geometry, int segment, double distanceAlong) {
+            this.geometry = geometry;
+            this.segment = segment;
+            this.distanceAlong = distanceAlong;
+        }
+    }
+
+    // Precomputes segment data for every route; replaces the previous set in one step
+    public void setRoutes(Map<String, Route> routes) {
+        Map<String, RouteGeometry> built = new HashMap<>();
+        for (Map.Entry<String, Route> entry : routes.entrySet()) {
+            built.put(entry.getKey(), RouteGeometry.of(entry.getKey(), entry.getValue()));
+        }
+        geometries = Collections.unmodifiableMap(built);
+    }
+
+    public RouteGeometry getGeometry(String routeId) {
+        return geometries.get(routeId);
+    }
+
+    /**
+     * Matches a position for a bus on a route, or returns null when the route
+     * is unknown. Progress is only advanced by matched positions.
+     */
+    public RouteMatch match(String busId, String routeId, double lat, double lng) {
+        RouteGeometry geometry = routeId != null ? geometries.get(routeId) : null;
+        if (geometry == null) return null;
+
+        double x = geometry.toX(lng);
+        double y = geometry.toY(lat);
+        int segmentCount = geometry.getSegmentCount();
+
+        // Progress on another route, or on a route that has since been reloaded, is discarded
+        Progress progress = progressByBus.get(busId);
+        if (progress != null && progress.geometry != geometry) {
+            progress = null;
+        }
+
+        int segment = -1;
+        double offset = Double.MAX_VALUE;
+        if (progress != null) {
+            int from = Math.max(0, progress.segment - BACKWARD_WINDOW);
+            int to = Math.min(segmentCount, progress.segment + FORWARD_WINDOW + 1);
+            segment = geometry.nearestSegment(x, y, from, to);
+            offset = geometry.distanceToSegment(x, y, segment);
+        }
+        if (offset > maxOffsetMeters) {
+            segment = geometry.nearestSegment(x, y, 0, segmentCount);
+            offset = geometry.distanceToSegment(x, y, segment);
+        }
+
+        if (offset > maxOffsetMeters) {
+            return progress != null
+                    ? result(geometry, lat, lng, false, progress.segment, progress.distanceAlong, offset)
+                    : result(geometry, lat, lng, false, 0, 0, offset);
+        }
+
+        double along = geometry.distanceAlong(x, y, segment);
+        progressByBus.put(busId, new Progress(geometry, segment, along));
+
+        double[] snapped = geometry.snap(x, y, segment);
+        return result(geometry, snapped[0], snapped[1], true, segment, along, offset);
+    }
+
+    private RouteMatch result(RouteGeometry geometry, double lat, double lng, boolean matched,
+                              int segment, double along, double offset) {
+        int nextStopIndex = geometry.nextStopIndex(along, STOP_TOLERANCE_METERS);
+        String nextStop = nextStopIndex >= 0 ? geometry.getStopName(nextStopIndex) : null;
+        return new RouteMatch(geometry.getRouteId(), lat, lng, matched, segment, along, offset, nextStop, nextStopIndex);
+    }
+
+    public void forget(String busId) {
+        progressByBus.remove(busId);
+    }
+}
@@ -0,0 +1,164 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+import com.citybus.util.PolylineEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Route responses serialized once, instead of running Jackson over the same
+ * static route data on every request.
+ *
+ * Each route, and the bulk collection of all routes, is stored per format as
+ * plain and gzip-compressed bytes, each with a strong ETag derived from the
+ * content. Payloads are built on first request rather than up front, since a
+ * full city feed has thousands of routes and most are rarely fetched.
+ * {@link #rebuild()} starts a new generation tied to the current route map,
+ * so readers never see a mix of old and new payloads.
+ */
+@Component
+public class RoutePayloadCache {
+
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_POLYLINE = "polyline";
+
+    private static final String ALL_ROUTES = "*";
+
+    private final BusTrackingService busTrackingService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Generation generation = new Generation(Collections.emptyMap());
+
+    public RoutePayloadCache(BusTrackingService busTrackingService) {
+        this.busTrackingService = busTrackingService;
+    }
+
+    private static final class Generation {
+        final Map<String, Route> routes;
+        final Map<String, RoutePayload> payloads = new ConcurrentHashMap<>();
+
+        Generation(Map<String, Route> routes) {
+            this.routes = routes;
+        }
+    }
+
+    public static final class RoutePayload {
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final String etag;
+        private final String gzipEtag;
+
+        RoutePayload(byte[] body, byte[] gzipBody, String etag, String gzipEtag) {
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = etag;
+            this.gzipEtag = gzipEtag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public byte[] getGzipBody() {
+            return gzipBody;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        // The gzip representation is a different byte sequence, so it gets its own strong tag
+        public String getGzipEtag() {
+            return gzipEtag;
+        }
+    }
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_JSON.equals(format) || FORMAT_POLYLINE.equals(format);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        generation = new Generation(busTrackingService.getRoutes());
+    }
+
+    @EventListener
+    public void onRoutesReloaded(RoutesReloadedEvent event) {
+        rebuild();
+    }
+
+    public RoutePayload get(String routeId, String format) {
+        Generation current = generation;
+        Route route = current.routes.get(routeId);
+        if (route == null) return null;
+        return current.payloads.computeIfAbsent(key(format, routeId), key -> toPayload(represent(route, format)));
+    }
+
+    public RoutePayload getAll(String format) {
+        Generation current = generation;
+        return current.payloads.computeIfAbsent(key(format, ALL_ROUTES), key -> {
+            Map<String, Object> all = new LinkedHashMap<>();
+            for (Map.Entry<String, Route> entry : new TreeMap<>(current.routes).entrySet()) {
+                all.put(entry.getKey(), represent(entry.getValue(), format));
+            }
+            return toPayload(all);
+        });
+    }
+
+    private static String key(String format, String routeId) {
+        return format + ":" + routeId;
+    }
+
+    private Object represent(Route route, String format) {
+        if (FORMAT_JSON.equals(format)) {
+            return route;
+        }
+        Map<String, Object> compact = new LinkedHashMap<>();
+        compact.put("name", route.getName());
+        compact.put("polyline", PolylineEncoder.encode(route.getPath()));
+        compact.put("stops", route.getStops());
+        return compact;
+    }
+
+    private RoutePayload toPayload(Object representation) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(representation);
+            String hash = hash(body);
+            return new RoutePayload(body, gzip(body), "\"" + hash + "\"", "\"" + hash + "-gz\"");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize route payload", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
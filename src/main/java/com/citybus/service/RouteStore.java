@@ -0,0 +1,143 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Route and stop data loaded from outside the code.
+ *
+ * {@code citybus.routes.location} names either a JSON file (any Spring
+ * resource, default {@code classpath:routes/routes.json}) holding routes keyed
+ * by id in the same shape {@code /api/routes} returns, or a directory holding
+ * a GTFS feed.
+ *
+ * The route map is immutable and published through a volatile field. A reload
+ * parses the new data completely before swapping it in, so readers never
+ * block and never see a partial map, and a reload that fails leaves the
+ * current routes in place.
+ */
+@Component
+public class RouteStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RouteStore.class);
+
+    private final String location;
+    private final ResourceLoader resourceLoader;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Map<String, Route> routes = Collections.emptyMap();
+    private volatile Map<String, Object> lastLoad = Collections.emptyMap();
+
+    public RouteStore(@Value("${citybus.routes.location:classpath:routes/routes.json}") String location,
+                      ResourceLoader resourceLoader,
+                      ApplicationEventPublisher eventPublisher) {
+        this.location = location;
+        this.resourceLoader = resourceLoader;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        routes = read();
+    }
+
+    /**
+     * Re-reads the configured location and swaps the new routes in. Returns
+     * load statistics; throws, keeping the current routes, if parsing fails.
+     */
+    public synchronized Map<String, Object> reload() throws IOException {
+        Map<String, Route> loaded = read();
+        routes = loaded;
+        eventPublisher.publishEvent(new RoutesReloadedEvent(loaded));
+        return lastLoad;
+    }
+
+    public Map<String, Route> getRoutes() {
+        return routes;
+    }
+
+    public Route getRoute(String routeId) {
+        return routes.get(routeId);
+    }
+
+    public Map<String, Object> getLastLoad() {
+        return lastLoad;
+    }
+
+    private Map<String, Route> read() throws IOException {
+        long start = System.nanoTime();
+
+        Map<String, Route> loaded;
+        Path directory = asDirectory(location);
+        if (directory != null) {
+            loaded = GtfsRouteLoader.load(directory);
+        } else {
+            Resource resource = resourceLoader.getResource(location);
+            try (InputStream in = resource.getInputStream()) {
+                loaded = objectMapper.readValue(in, new TypeReference<LinkedHashMap<String, Route>>() {});
+            }
+        }
+        for (Map.Entry<String, Route> entry : loaded.entrySet()) {
+            Route route = entry.getValue();
+            if (route.getPath() == null || route.getPath().size() < 2) {
+                throw new IOException("Route " + entry.getKey() + " in " + location + " needs at least two path points");
+            }
+            if (route.getStops() == null) {
+                route.setStops(Collections.emptyList());
+            }
+        }
+
+        long pathPoints = 0;
+        long stops = 0;
+        for (Route route : loaded.values()) {
+            pathPoints += route.getPath().size();
+            stops += route.getStops().size();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("source", location);
+        stats.put("format", directory != null ? "gtfs" : "json");
+        stats.put("routes", loaded.size());
+        stats.put("stops", stops);
+        stats.put("pathPoints", pathPoints);
+        stats.put("loadMs", elapsedMs);
+        stats.put("loadedAt", System.currentTimeMillis());
+        lastLoad = Collections.unmodifiableMap(stats);
+
+        log.info("Loaded {} routes ({} stops, {} path points) from {} in {} ms",
+                loaded.size(), stops, pathPoints, location, elapsedMs);
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    // A plain filesystem path (or file: URL) that is a directory is read as a GTFS feed
+    private static Path asDirectory(String location) {
+        if (location.startsWith("classpath:")) return null;
+        String path = location.startsWith("file:") ? location.substring("file:".length()) : location;
+        try {
+            Path candidate = Paths.get(path);
+            return Files.isDirectory(candidate) ? candidate : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+
+import java.util.Map;
+
+/**
+ * Published by {@link RouteStore} after a reload has swapped in a new route
+ * map, so components holding data derived from routes can rebuild it.
+ */
+public class RoutesReloadedEvent {
+    private final Map<String, Route> routes;
+
+    public RoutesReloadedEvent(Map<String, Route> routes) {
+        this.routes = routes;
+    }
+
+    public Map<String, Route> getRoutes() {
+        return routes;
+    }
+}
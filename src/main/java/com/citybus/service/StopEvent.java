@@ -0,0 +1,86 @@
+package com.citybus.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bus arriving at or departing from one of its route's stops. Departures
+ * carry the arrival time and the dwell time at the stop.
+ */
+public final class StopEvent {
+
+    public static final String ARRIVED = "bus-arrived";
+    public static final String DEPARTED = "bus-departed";
+
+    private final String type;
+    private final String busId;
+    private final String routeId;
+    private final int stopIndex;
+    private final String stopName;
+    private final long timestamp;
+    private final long arrivedAt;
+
+    StopEvent(String type, String busId, String routeId, int stopIndex, String stopName,
+              long timestamp, long arrivedAt) {
+        this.type = type;
+        this.busId = busId;
+        this.routeId = routeId;
+        this.stopIndex = stopIndex;
+        this.stopName = stopName;
+        this.timestamp = timestamp;
+        this.arrivedAt = arrivedAt;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isArrival() {
+        return ARRIVED.equals(type);
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    // Position of the stop in Route.stops
+    public int getStopIndex() {
+        return stopIndex;
+    }
+
+    public String getStopName() {
+        return stopName;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getArrivedAt() {
+        return arrivedAt;
+    }
+
+    // Zero for an arrival
+    public long getDwellMs() {
+        return isArrival() ? 0 : timestamp - arrivedAt;
+    }
+
+    // Payload sent to riders; a new mutable map each time
+    public Map<String, Object> toMessage() {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("busId", busId);
+        message.put("routeId", routeId);
+        message.put("stopIndex", stopIndex);
+        message.put("stopName", stopName);
+        message.put("timestamp", timestamp);
+        if (!isArrival()) {
+            message.put("arrivedAt", arrivedAt);
+            message.put("dwellMs", getDwellMs());
+        }
+        return message;
+    }
+}
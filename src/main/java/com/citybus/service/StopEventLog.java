@@ -0,0 +1,229 @@
+package com.citybus.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Stop arrivals and departures, kept next to the track log and on the same
+ * retention.
+ *
+ * A bus produces a few of these per stop rather than one per ping, so they
+ * are stored as one text line per event in a file per UTC day. Events are
+ * buffered and appended by the writer timer shared with the track log; a
+ * history query reads only the day files its time range covers.
+ */
+@Component
+public class StopEventLog {
+
+    private static final Logger log = LoggerFactory.getLogger(StopEventLog.class);
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final String FILE_PREFIX = "stops-";
+    private static final String FILE_SUFFIX = ".csv";
+    private static final int MAX_BUFFERED = 65_536;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int retentionDays;
+
+    private final Object bufferLock = new Object();
+    private List<StopEvent> pending = new ArrayList<>();
+    private long dropped;
+
+    private volatile boolean open;
+    private long lastPrunedDay = Long.MIN_VALUE;
+
+    public StopEventLog(@Value("${citybus.tracklog.enabled:true}") boolean enabled,
+                        @Value("${citybus.tracklog.directory:data/tracks}") String directory,
+                        @Value("${citybus.tracklog.retention-days:7}") int retentionDays) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.retentionDays = retentionDays;
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) return;
+        try {
+            Files.createDirectories(directory);
+            open = true;
+        } catch (IOException e) {
+            log.error("Stop event log disabled, cannot open {}: {}", directory, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (!open) return;
+        flush();
+        open = false;
+    }
+
+    // Queues an event for the writer; dropped and counted when the buffer is full
+    public boolean append(StopEvent event) {
+        if (!open) return false;
+        synchronized (bufferLock) {
+            if (pending.size() >= MAX_BUFFERED) {
+                dropped++;
+                return false;
+            }
+            pending.add(event);
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${citybus.tracklog.flush-ms:200}")
+    public synchronized void flush() {
+        if (!open) return;
+
+        List<StopEvent> batch;
+        synchronized (bufferLock) {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        // Events arrive in time order, so a batch spans at most a day boundary or two
+        int from = 0;
+        while (from < batch.size()) {
+            long day = Math.floorDiv(batch.get(from).getTimestamp(), DAY_MS);
+            int to = from;
+            while (to < batch.size() && Math.floorDiv(batch.get(to).getTimestamp(), DAY_MS) == day) {
+                to++;
+            }
+            write(day, batch.subList(from, to));
+            from = to;
+        }
+        prune();
+    }
+
+    /**
+     * Events recorded for a bus between {@code from} and {@code to} inclusive,
+     * oldest first, up to {@code limit} events. Events still waiting in the
+     * write buffer are not included.
+     */
+    public List<StopEvent> history(String busId, long from, long to, int limit) {
+        List<StopEvent> events = new ArrayList<>();
+        if (!open) return events;
+
+        for (long day = Math.floorDiv(from, DAY_MS); day <= Math.floorDiv(to, DAY_MS) && events.size() < limit; day++) {
+            Path file = dayFile(day);
+            if (!Files.exists(file)) continue;
+
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null && events.size() < limit) {
+                    StopEvent event = parse(line);
+                    if (event != null && event.getBusId().equals(busId)
+                            && event.getTimestamp() >= from && event.getTimestamp() <= to) {
+                        events.add(event);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Error reading stop events from {}: {}", file, e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    public Map<String, Object> getStats() {
+        int buffered;
+        long droppedCount;
+        synchronized (bufferLock) {
+            buffered = pending.size();
+            droppedCount = dropped;
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", open);
+        stats.put("buffered", buffered);
+        stats.put("dropped", droppedCount);
+        return stats;
+    }
+
+    private void write(long day, List<StopEvent> events) {
+        try (BufferedWriter writer = Files.newBufferedWriter(dayFile(day), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (StopEvent event : events) {
+                writer.write(format(event));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            log.error("Error writing stop events: {}", e.getMessage());
+        }
+    }
+
+    // Deletes day files past the retention once per day
+    private void prune() {
+        long today = Math.floorDiv(System.currentTimeMillis(), DAY_MS);
+        if (today == lastPrunedDay) return;
+        lastPrunedDay = today;
+
+        long oldestDay = today - retentionDays;
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(StopEventLog::isEventFile)
+                    .filter(file -> dayOf(file) < oldestDay)
+                    .forEach(file -> {
+                        try {
+                            Files.deleteIfExists(file);
+                        } catch (IOException e) {
+                            log.warn("Error deleting {}: {}", file, e.getMessage());
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Error pruning stop events: {}", e.getMessage());
+        }
+    }
+
+    private Path dayFile(long day) {
+        return directory.resolve(FILE_PREFIX + LocalDate.ofEpochDay(day) + FILE_SUFFIX);
+    }
+
+    private static boolean isEventFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)
+                && name.length() == FILE_PREFIX.length() + 10 + FILE_SUFFIX.length();
+    }
+
+    private static long dayOf(Path file) {
+        String name = file.getFileName().toString();
+        return LocalDate.parse(name.substring(FILE_PREFIX.length(), FILE_PREFIX.length() + 10)).toEpochDay();
+    }
+
+    // timestamp,type,busId,routeId,stopIndex,arrivedAt,stopName; the name goes last as it may contain commas
+    private static String format(StopEvent event) {
+        return event.getTimestamp() + "," + event.getType() + "," + event.getBusId() + "," + event.getRouteId()
+                + "," + event.getStopIndex() + "," + event.getArrivedAt() + "," + event.getStopName();
+    }
+
+    private static StopEvent parse(String line) {
+        String[] fields = line.split(",", 7);
+        if (fields.length < 7) return null;
+        try {
+            return new StopEvent(fields[1], fields[2], fields[3], Integer.parseInt(fields[4]), fields[6],
+                    Long.parseLong(fields[0]), Long.parseLong(fields[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.citybus.service;
+
+/**
+ * Circular geofences around the stops of one route, indexed by polyline
+ * segment so a position is only tested against the stops next to the
+ * segment it was matched to.
+ *
+ * A stop is listed under every segment that passes within the radius of it.
+ * A snapped position always lies on its segment, so any stop whose circle
+ * contains it is in that segment's list, which usually holds zero or one
+ * stop. The lists are packed into one array with per-segment offsets.
+ */
+final class StopGeofences {
+
+    private final RouteGeometry geometry;
+    private final double radiusSq;
+    private final int[] segmentStart;
+    private final int[] segmentStops;
+
+    StopGeofences(RouteGeometry geometry, double radiusMeters) {
+        this.geometry = geometry;
+        this.radiusSq = radiusMeters * radiusMeters;
+
+        int segments = geometry.getSegmentCount();
+        int stops = geometry.getStopCount();
+        boolean[][] near = new boolean[stops][];
+        segmentStart = new int[segments + 1];
+        for (int stop = 0; stop < stops; stop++) {
+            double x = geometry.getStopX(stop);
+            double y = geometry.getStopY(stop);
+            if (Double.isNaN(x)) continue;
+
+            near[stop] = new boolean[segments];
+            for (int segment = 0; segment < segments; segment++) {
+                if (geometry.distanceToSegment(x, y, segment) <= radiusMeters) {
+                    near[stop][segment] = true;
+                    segmentStart[segment + 1]++;
+                }
+            }
+        }
+        for (int segment = 0; segment < segments; segment++) {
+            segmentStart[segment + 1] += segmentStart[segment];
+        }
+
+        segmentStops = new int[segmentStart[segments]];
+        int next = 0;
+        for (int segment = 0; segment < segments; segment++) {
+            for (int stop = 0; stop < stops; stop++) {
+                if (near[stop] != null && near[stop][segment]) {
+                    segmentStops[next++] = stop;
+                }
+            }
+        }
+    }
+
+    RouteGeometry getGeometry() {
+        return geometry;
+    }
+
+    // Closest stop whose circle contains the projected point, or -1; ties go to the earlier stop
+    int stopAt(double x, double y, int segment) {
+        int best = -1;
+        double bestSq = radiusSq;
+        for (int i = segmentStart[segment]; i < segmentStart[segment + 1]; i++) {
+            int stop = segmentStops[i];
+            double distanceSq = distanceSq(stop, x, y);
+            if (distanceSq <= radiusSq && (best < 0 || distanceSq < bestSq)) {
+                bestSq = distanceSq;
+                best = stop;
+            }
+        }
+        return best;
+    }
+
+    boolean isWithin(int stop, double x, double y, double radiusMeters) {
+        return distanceSq(stop, x, y) <= radiusMeters * radiusMeters;
+    }
+
+    private double distanceSq(int stop, double x, double y) {
+        double dx = x - geometry.getStopX(stop);
+        double dy = y - geometry.getStopY(stop);
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,540 @@
+package com.citybus.service;
+
+import com.citybus.model.Position;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Append-only history of every accepted driver location fix.
+ *
+ * Fixes are stored as fixed-width 32-byte records in memory-mapped segment
+ * files, one or more per UTC day. The ingest path only copies a fix into a
+ * preallocated buffer; a single writer moves buffered records into the current
+ * segment on a timer, so no file I/O happens per ping. Bus ids are stored as
+ * small integers through a dictionary file kept next to the segments.
+ *
+ * Each segment keeps a sparse in-memory index per bus (every Nth record of
+ * that bus), so a history query starts scanning just before its time range
+ * and stops just after it instead of reading the whole day. The index is
+ * rebuilt from the segment files on startup.
+ */
+@Component
+public class TrackLog {
+
+    private static final Logger log = LoggerFactory.getLogger(TrackLog.class);
+
+    // int bus, float accuracy, long timestamp, double lat, double lng
+    static final int RECORD_SIZE = 32;
+
+    // int magic, int version, int capacity, int unused, long committed record count
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x4342544c;
+    private static final int FORMAT_VERSION = 1;
+    private static final int COUNT_OFFSET = 16;
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final String DICTIONARY_FILE = "buses.txt";
+    private static final String SEGMENT_PREFIX = "track-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentRecords;
+    private final int indexInterval;
+    private final int retentionDays;
+
+    // Producers fill one batch while the writer drains the other
+    private final Object bufferLock = new Object();
+    private Batch filling;
+    private Batch writing;
+    private long dropped;
+
+    private final Map<String, Integer> busIndexes = new ConcurrentHashMap<>();
+    private final List<String> busIds = new CopyOnWriteArrayList<>();
+    private BufferedWriter dictionary;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private Segment current;
+    private volatile boolean open;
+    private volatile long lastFlushMicros;
+
+    public TrackLog(@Value("${citybus.tracklog.enabled:true}") boolean enabled,
+                    @Value("${citybus.tracklog.directory:data/tracks}") String directory,
+                    @Value("${citybus.tracklog.segment-records:2097152}") int segmentRecords,
+                    @Value("${citybus.tracklog.buffer-records:65536}") int bufferRecords,
+                    @Value("${citybus.tracklog.index-interval:64}") int indexInterval,
+                    @Value("${citybus.tracklog.retention-days:7}") int retentionDays) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        // Record offsets are ints, so one segment stays under 2 GB
+        this.segmentRecords = Math.max(1024, Math.min(segmentRecords, (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE));
+        this.indexInterval = Math.max(1, indexInterval);
+        this.retentionDays = retentionDays;
+        if (enabled) {
+            this.filling = new Batch(Math.max(1, bufferRecords));
+            this.writing = new Batch(Math.max(1, bufferRecords));
+        }
+    }
+
+    private static final class Batch {
+        final int[] buses;
+        final long[] timestamps;
+        final double[] lats;
+        final double[] lngs;
+        final float[] accuracies;
+        int size;
+
+        Batch(int capacity) {
+            buses = new int[capacity];
+            timestamps = new long[capacity];
+            lats = new double[capacity];
+            lngs = new double[capacity];
+            accuracies = new float[capacity];
+        }
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) return;
+        try {
+            Files.createDirectories(directory);
+            loadDictionary();
+            openSegments();
+            open = true;
+            log.info("Track log opened at {}: {} segments, {} buses", directory.toAbsolutePath(), segments.size(), busIds.size());
+        } catch (IOException e) {
+            // Live tracking keeps working without history
+            log.error("Track log disabled, cannot open {}: {}", directory, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (!open) return;
+        flush();
+        open = false;
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        try {
+            dictionary.close();
+        } catch (IOException e) {
+            log.warn("Error closing track log dictionary: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a fix for the writer. Returns false if the log is closed or the
+     * buffer is full, in which case the fix is dropped and counted.
+     */
+    public boolean append(String busId, Position position) {
+        if (!open) return false;
+        int bus = busIndex(busId);
+        if (bus < 0) return false;
+
+        synchronized (bufferLock) {
+            Batch batch = filling;
+            if (batch.size == batch.buses.length) {
+                dropped++;
+                return false;
+            }
+            int i = batch.size++;
+            batch.buses[i] = bus;
+            batch.timestamps[i] = position.getTimestamp();
+            batch.lats[i] = position.getLat();
+            batch.lngs[i] = position.getLng();
+            batch.accuracies[i] = (float) position.getAccuracy();
+        }
+        return true;
+    }
+
+    // Single writer: moves buffered fixes into the mapped segment and commits the record count
+    @Scheduled(fixedDelayString = "${citybus.tracklog.flush-ms:200}")
+    public synchronized void flush() {
+        if (!open) return;
+
+        Batch batch;
+        synchronized (bufferLock) {
+            batch = filling;
+            if (batch.size == 0) return;
+            filling = writing;
+            writing = batch;
+        }
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < batch.size; i++) {
+                long timestamp = batch.timestamps[i];
+                long day = Math.floorDiv(timestamp, DAY_MS);
+                if (current == null || day > current.day || current.isFull()) {
+                    roll(day);
+                }
+                current.put(batch.buses[i], batch.accuracies[i], timestamp, batch.lats[i], batch.lngs[i]);
+            }
+        } catch (IOException e) {
+            log.error("Error writing track log: {}", e.getMessage());
+        } finally {
+            if (current != null) {
+                current.commit();
+            }
+            batch.size = 0;
+        }
+        lastFlushMicros = (System.nanoTime() - start) / 1000;
+    }
+
+    /**
+     * Fixes recorded for a bus between {@code from} and {@code to} inclusive,
+     * oldest first, up to {@code limit} points. Fixes still waiting in the
+     * write buffer are not included.
+     */
+    public List<Position> history(String busId, long from, long to, int limit) {
+        List<Position> points = new ArrayList<>();
+        Integer bus = busIndexes.get(busId);
+        if (bus == null || !open) return points;
+
+        for (Segment segment : segments) {
+            if (segment.maxTime < from || segment.minTime > to) continue;
+            segment.collect(bus, from, to, limit, points);
+            if (points.size() >= limit) break;
+        }
+        return points;
+    }
+
+    public Map<String, Object> getStats() {
+        long records = 0;
+        for (Segment segment : segments) {
+            records += segment.committed;
+        }
+        int buffered;
+        long droppedCount;
+        synchronized (bufferLock) {
+            buffered = filling != null ? filling.size : 0;
+            droppedCount = dropped;
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", open);
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("segments", segments.size());
+        stats.put("records", records);
+        stats.put("buses", busIds.size());
+        stats.put("buffered", buffered);
+        stats.put("dropped", droppedCount);
+        stats.put("lastFlushMicros", lastFlushMicros);
+        return stats;
+    }
+
+    // New buses are appended to the dictionary once; after that the lookup never allocates
+    private int busIndex(String busId) {
+        Integer index = busIndexes.get(busId);
+        if (index != null) return index;
+
+        synchronized (busIds) {
+            index = busIndexes.get(busId);
+            if (index != null) return index;
+            try {
+                dictionary.write(busId);
+                dictionary.newLine();
+                dictionary.flush();
+            } catch (IOException e) {
+                log.error("Error recording bus {} in track log: {}", busId, e.getMessage());
+                return -1;
+            }
+            busIds.add(busId);
+            busIndexes.put(busId, busIds.size() - 1);
+            return busIds.size() - 1;
+        }
+    }
+
+    private void loadDictionary() throws IOException {
+        Path file = directory.resolve(DICTIONARY_FILE);
+        if (Files.exists(file)) {
+            for (String busId : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (busId.isEmpty()) continue;
+                busIds.add(busId);
+                busIndexes.put(busId, busIds.size() - 1);
+            }
+        }
+        dictionary = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(TrackLog::isSegmentFile).sorted().forEach(files::add);
+        }
+
+        long oldestDay = oldestRetainedDay();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long day = LocalDate.parse(name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 10)).toEpochDay();
+            if (day < oldestDay) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            int sequence = Integer.parseInt(name.substring(SEGMENT_PREFIX.length() + 11, name.length() - SEGMENT_SUFFIX.length()));
+            try {
+                segments.add(Segment.open(file, day, sequence, indexInterval));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable track segment {}: {}", file, e.getMessage());
+            }
+        }
+        if (!segments.isEmpty()) {
+            current = segments.get(segments.size() - 1);
+        }
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && name.length() == SEGMENT_PREFIX.length() + 14 + SEGMENT_SUFFIX.length();
+    }
+
+    // Starts a new segment for the day, or the next one of the same day when the current one is full
+    private void roll(long day) throws IOException {
+        int sequence = current != null && current.day == day ? current.sequence + 1 : 0;
+        if (current != null) {
+            current.commit();
+            current.force();
+        }
+        // Step past files that exist but were not opened, such as an unreadable segment skipped at startup
+        Path file = segmentPath(day, sequence);
+        while (Files.exists(file)) {
+            file = segmentPath(day, ++sequence);
+        }
+        current = Segment.create(file, day, sequence, segmentRecords, indexInterval);
+        segments.add(current);
+
+        long oldestDay = oldestRetainedDay();
+        for (Segment segment : segments) {
+            if (segment.day < oldestDay) {
+                segments.remove(segment);
+                segment.close();
+                Files.deleteIfExists(segment.file);
+            }
+        }
+    }
+
+    private Path segmentPath(long day, int sequence) {
+        return directory.resolve(String.format("%s%s-%03d%s", SEGMENT_PREFIX, LocalDate.ofEpochDay(day), sequence, SEGMENT_SUFFIX));
+    }
+
+    private long oldestRetainedDay() {
+        return Math.floorDiv(System.currentTimeMillis(), DAY_MS) - retentionDays;
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long day;
+        final int sequence;
+        final int capacity;
+        final int indexInterval;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        // Guarded by this; written by the writer, read by history queries
+        final Map<Integer, BusIndex> index = new HashMap<>();
+
+        // Written by the writer only; readers use committed
+        int size;
+        volatile int committed;
+        volatile long minTime = Long.MAX_VALUE;
+        volatile long maxTime = Long.MIN_VALUE;
+
+        private Segment(Path file, long day, int sequence, int capacity, int indexInterval, FileChannel channel) throws IOException {
+            this.file = file;
+            this.day = day;
+            this.sequence = sequence;
+            this.capacity = capacity;
+            this.indexInterval = indexInterval;
+            this.channel = channel;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+
+        static Segment create(Path file, long day, int sequence, int capacity, int indexInterval) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, day, sequence, capacity, indexInterval, channel);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, FORMAT_VERSION);
+            segment.buffer.putInt(8, capacity);
+            segment.buffer.putLong(COUNT_OFFSET, 0);
+            return segment;
+        }
+
+        // Maps an existing segment and rebuilds its index from the committed records
+        static Segment open(Path file, long day, int sequence, int indexInterval) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                    throw new IOException("not a track segment");
+                }
+                int capacity = header.getInt(8);
+                long count = header.getLong(COUNT_OFFSET);
+                if (count < 0 || count > capacity) {
+                    throw new IOException("bad record count " + count);
+                }
+
+                Segment segment = new Segment(file, day, sequence, capacity, indexInterval, channel);
+                for (int i = 0; i < count; i++) {
+                    int offset = HEADER_SIZE + i * RECORD_SIZE;
+                    segment.index(segment.buffer.getInt(offset), segment.buffer.getLong(offset + 8), i);
+                }
+                segment.size = (int) count;
+                segment.committed = (int) count;
+                return segment;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        void put(int bus, float accuracy, long timestamp, double lat, double lng) {
+            int offset = HEADER_SIZE + size * RECORD_SIZE;
+            buffer.putInt(offset, bus);
+            buffer.putFloat(offset + 4, accuracy);
+            buffer.putLong(offset + 8, timestamp);
+            buffer.putDouble(offset + 16, lat);
+            buffer.putDouble(offset + 24, lng);
+            index(bus, timestamp, size);
+            size++;
+        }
+
+        private synchronized void index(int bus, long timestamp, int position) {
+            BusIndex busIndex = index.get(bus);
+            if (busIndex == null) {
+                busIndex = new BusIndex();
+                index.put(bus, busIndex);
+            }
+            if (busIndex.records++ % indexInterval == 0) {
+                busIndex.add(timestamp, position);
+            }
+            if (timestamp < minTime) minTime = timestamp;
+            if (timestamp > maxTime) maxTime = timestamp;
+        }
+
+        // Records are written before the count, so a crash never exposes a partial record
+        void commit() {
+            if (committed == size) return;
+            buffer.putLong(COUNT_OFFSET, size);
+            committed = size;
+        }
+
+        void collect(int bus, long from, long to, int limit, List<Position> out) {
+            int start;
+            int end;
+            synchronized (this) {
+                BusIndex busIndex = index.get(bus);
+                if (busIndex == null) return;
+                start = busIndex.startFor(from);
+                end = busIndex.endFor(to);
+            }
+            end = Math.min(end, committed);
+
+            for (int i = start; i < end && out.size() < limit; i++) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                if (buffer.getInt(offset) != bus) continue;
+                long timestamp = buffer.getLong(offset + 8);
+                if (timestamp < from || timestamp > to) continue;
+                out.add(new Position(buffer.getDouble(offset + 16), buffer.getDouble(offset + 24),
+                        buffer.getFloat(offset + 4), timestamp));
+            }
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                force();
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing track segment {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    // Timestamp and record position of every Nth record of one bus within a segment
+    private static final class BusIndex {
+        long[] times = new long[16];
+        int[] positions = new int[16];
+        int entries;
+        int records;
+
+        void add(long time, int position) {
+            if (entries == times.length) {
+                times = Arrays.copyOf(times, entries * 2);
+                positions = Arrays.copyOf(positions, entries * 2);
+            }
+            times[entries] = time;
+            positions[entries] = position;
+            entries++;
+        }
+
+        // Position of the last indexed record at or before the time, or the bus's first record
+        int startFor(long from) {
+            int low = 0;
+            int high = entries - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= from) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return positions[found];
+        }
+
+        // Position of the first indexed record after the time; the scan can stop there
+        int endFor(long to) {
+            int low = 0;
+            int high = entries - 1;
+            int found = entries;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] > to) {
+                    found = mid;
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return found < entries ? positions[found] : Integer.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.citybus.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the WebSocket pipeline, exposed through Actuator
+ * ({@code /actuator/metrics}, {@code /actuator/prometheus}).
+ *
+ * Meters are resolved once per message or broadcast type and cached, so the
+ * hot paths only pay for a map lookup and the record call. Types are the
+ * fixed protocol names; anything a client makes up is recorded as
+ * {@code unknown} so a bad client cannot grow the tag space.
+ *
+ * Propagation latency runs from the server-stamped ingest time of a driver
+ * fix to the moment the resulting update is written to a rider's socket, so
+ * it includes the ingest coalescing tick and the send queue.
+ */
+@Component
+public class TrackingMetrics {
+
+    public static final String TYPE_UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> messageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Broadcast> broadcasts = new ConcurrentHashMap<>();
+    private final Counter sendFailures;
+    private final Counter droppedFrames;
+    private final Timer propagation;
+
+    public TrackingMetrics(MeterRegistry registry, FleetRegistry fleetRegistry) {
+        this.registry = registry;
+
+        Gauge.builder("citybus.drivers.active", fleetRegistry, FleetRegistry::getDriverCount)
+                .description("Drivers currently on the map, including restored and remote ones")
+                .register(registry);
+        Gauge.builder("citybus.riders.active", fleetRegistry, FleetRegistry::getRiderCount)
+                .description("Registered rider sessions")
+                .register(registry);
+
+        this.sendFailures = Counter.builder("citybus.ws.send.failures")
+                .description("Frames whose socket write failed")
+                .register(registry);
+        this.droppedFrames = Counter.builder("citybus.ws.frames.dropped")
+                .description("Frames discarded by a full send buffer")
+                .register(registry);
+        this.propagation = Timer.builder("citybus.location.propagation")
+                .description("Driver fix ingest to delivery on a rider socket")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    // The timer's count doubles as the per-type message counter
+    public void recordMessage(String type, long nanos) {
+        messageTimers.computeIfAbsent(type, this::messageTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBroadcast(String type, int recipients, long nanos) {
+        Broadcast broadcast = broadcasts.computeIfAbsent(type, Broadcast::new);
+        broadcast.recipients.record(recipients);
+        broadcast.duration.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSendFailure() {
+        sendFailures.increment();
+    }
+
+    public void recordDroppedFrame() {
+        droppedFrames.increment();
+    }
+
+    public void recordPropagation(long ingestedAt, long deliveredAt) {
+        propagation.record(Math.max(0, deliveredAt - ingestedAt), TimeUnit.MILLISECONDS);
+    }
+
+    private Timer messageTimer(String type) {
+        return Timer.builder("citybus.ws.messages")
+                .description("Inbound WebSocket message handling time")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(registry);
+    }
+
+    private final class Broadcast {
+        final DistributionSummary recipients;
+        final Timer duration;
+
+        Broadcast(String type) {
+            recipients = DistributionSummary.builder("citybus.broadcast.recipients")
+                    .description("Sessions a broadcast was queued to")
+                    .tag("type", type)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            duration = Timer.builder("citybus.broadcast.duration")
+                    .description("Time to encode and queue a broadcast to every recipient")
+                    .tag("type", type)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(10_000))
+                    .maximumExpectedValue(Duration.ofSeconds(1))
+                    .register(registry);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.citybus.service;
 
 import com.citybus.model.User;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -13,10 +14,13 @@ import java.util.Optional;
 public class UserService {
 
     private final PasswordEncoder passwordEncoder;
+    private final String adminPassword;
     private List<User> users = new ArrayList<>();
 
-    public UserService(PasswordEncoder passwordEncoder) {
+    public UserService(PasswordEncoder passwordEncoder,
+                       @Value("${citybus.admin.password:}") String adminPassword) {
         this.passwordEncoder = passwordEncoder;
+        this.adminPassword = adminPassword;
     }
 
     @PostConstruct
@@ -26,6 +30,11 @@ public class UserService {
         users.add(new User(3L, "drvr-3", "driver3", passwordEncoder.encode("password123"), "driver", "bus-3"));
         users.add(new User(4L, "drvr-4", "driver4", passwordEncoder.encode("password123"), "driver", "bus-4"));
         users.add(new User(5L, "drvr-5", "driver5", passwordEncoder.encode("password123"), "driver", "bus-5"));
+
+        // The admin API stays locked until an admin password is configured
+        if (!adminPassword.isBlank()) {
+            users.add(new User(100L, "admn-1", "admin", passwordEncoder.encode(adminPassword), "admin", null));
+        }
     }
 
     public Optional<User> findByUsername(String username) {
@@ -0,0 +1,104 @@
+package com.citybus.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming reader for GTFS-style CSV files: a header row, comma
+ * separated fields, optional double quotes with "" as an escaped quote.
+ * Rows are read one at a time into a reused field buffer, so a feed with
+ * millions of rows never has to fit in memory. Quoted fields spanning lines
+ * are not supported; GTFS feeds do not use them in practice.
+ */
+public class CsvReader implements Closeable {
+
+    private final BufferedReader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    public CsvReader(Reader reader) throws IOException {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        String header = this.reader.readLine();
+        if (header != null) {
+            // Strip a UTF-8 byte order mark, which many GTFS exporters write
+            if (!header.isEmpty() && header.charAt(0) == '\uFEFF') {
+                header = header.substring(1);
+            }
+            split(header);
+            for (int i = 0; i < fields.size(); i++) {
+                columns.put(fields.get(i).trim(), i);
+            }
+        }
+    }
+
+    // Index of a column, or -1 if the file does not have it
+    public int column(String name) {
+        Integer index = columns.get(name);
+        return index != null ? index : -1;
+    }
+
+    public int requireColumn(String name) throws IOException {
+        int index = column(name);
+        if (index < 0) {
+            throw new IOException("Missing column: " + name);
+        }
+        return index;
+    }
+
+    // Advances to the next non-blank row; false at end of file
+    public boolean next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) return false;
+        } while (line.isEmpty());
+        split(line);
+        return true;
+    }
+
+    // Field of the current row, or an empty string when the column is absent or short
+    public String get(int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column) : "";
+    }
+
+    private void split(String line) {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.citybus.util;
+
+import java.util.List;
+
+/**
+ * Encoded polyline format (as used by Google Maps and Leaflet plugins):
+ * coordinates rounded to 1e-5 degrees, delta-encoded and packed into
+ * printable ASCII, five bits per character.
+ */
+public class PolylineEncoder {
+
+    private static final double PRECISION = 1e5;
+
+    public static String encode(List<double[]> points) {
+        StringBuilder encoded = new StringBuilder(points.size() * 8);
+        long previousLat = 0;
+        long previousLng = 0;
+        for (double[] point : points) {
+            long lat = Math.round(point[0] * PRECISION);
+            long lng = Math.round(point[1] * PRECISION);
+            encodeValue(lat - previousLat, encoded);
+            encodeValue(lng - previousLng, encoded);
+            previousLat = lat;
+            previousLng = lng;
+        }
+        return encoded.toString();
+    }
+
+    private static void encodeValue(long value, StringBuilder encoded) {
+        long shifted = value < 0 ? ~(value << 1) : value << 1;
+        while (shifted >= 0x20) {
+            encoded.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+        encoded.append((char) (shifted + 63));
+    }
+}
@@ -0,0 +1,66 @@
+package com.citybus.websocket;
+
+import com.citybus.model.AuthPrincipal;
+import com.citybus.service.AuthService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Verifies the JWT once, at WebSocket handshake time, and attaches the
+ * resolved principal to the session attributes.
+ *
+ * Browsers cannot set headers on a WebSocket upgrade, so the token is taken
+ * from the {@code token} query parameter, or from a Bearer Authorization
+ * header for other clients. Connections without a token are accepted as
+ * anonymous riders; a token that is present but invalid rejects the handshake.
+ */
+@Component
+public class AuthHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String PRINCIPAL_ATTRIBUTE = "principal";
+
+    private final AuthService authService;
+
+    public AuthHandshakeInterceptor(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = extractToken(request);
+        if (token == null) return true;
+
+        AuthPrincipal principal = authService.authenticate(token);
+        if (principal == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        attributes.put(PRINCIPAL_ATTRIBUTE, principal);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    private String extractToken(ServerHttpRequest request) {
+        String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+        return token != null && !token.isEmpty() ? token : null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.citybus.websocket;
+
+import com.citybus.model.Position;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout binary frame for the high-rate location messages
+ * ({@code driver-location} inbound, {@code bus-location-update} outbound).
+ *
+ * All fields are big-endian:
+ * <pre>
+ * offset  size  field
+ *      0     1  frame type (0x01 = location)
+ *      1     4  bus index, as assigned by the server (ignored inbound)
+ *      5     4  latitude in degrees * 1e7
+ *      9     4  longitude in degrees * 1e7
+ *     13     8  timestamp, epoch milliseconds
+ *     21     2  accuracy in decimetres, unsigned, saturating at 65535
+ * </pre>
+ * 1e7 fixed-point keeps about 1 cm of precision, and 23 bytes replace a JSON
+ * text frame of well over a hundred.
+ */
+public final class BinaryLocationCodec {
+
+    public static final String SUBPROTOCOL = "citybus.binary.v1";
+
+    public static final byte LOCATION_FRAME = 0x01;
+    public static final int FRAME_LENGTH = 23;
+
+    private static final double FIXED_POINT_SCALE = 1e7;
+    private static final int MAX_ACCURACY_DM = 0xFFFF;
+
+    private BinaryLocationCodec() {
+    }
+
+    public static byte[] encode(int busIndex, Position position) {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_LENGTH);
+        buffer.put(LOCATION_FRAME);
+        buffer.putInt(busIndex);
+        buffer.putInt(toFixedPoint(position.getLat()));
+        buffer.putInt(toFixedPoint(position.getLng()));
+        buffer.putLong(position.getTimestamp());
+        buffer.putShort((short) Math.min(MAX_ACCURACY_DM, Math.max(0, Math.round(position.getAccuracy() * 10))));
+        return buffer.array();
+    }
+
+    public static boolean isLocationFrame(ByteBuffer frame) {
+        return frame.remaining() == FRAME_LENGTH && frame.get(frame.position()) == LOCATION_FRAME;
+    }
+
+    /**
+     * Decodes a location frame into a position stamped with the server receive
+     * time, matching the JSON path. Does not move the buffer's position.
+     */
+    public static Position decodePosition(ByteBuffer frame, long receivedAt) {
+        int base = frame.position();
+        double lat = frame.getInt(base + 5) / FIXED_POINT_SCALE;
+        double lng = frame.getInt(base + 9) / FIXED_POINT_SCALE;
+        double accuracy = (frame.getShort(base + 21) & 0xFFFF) / 10.0;
+        return new Position(lat, lng, accuracy, receivedAt);
+    }
+
+    private static int toFixedPoint(double degrees) {
+        return (int) Math.round(degrees * FIXED_POINT_SCALE);
+    }
+}
@@ -1,40 +1,131 @@
 package com.citybus.websocket;
 
+import com.citybus.cluster.FleetBus;
+import com.citybus.cluster.FleetEvent;
+import com.citybus.model.AuthPrincipal;
+import com.citybus.model.BusAssignment;
 import com.citybus.model.BusLocation;
+import com.citybus.model.DriverSession;
+import com.citybus.model.Position;
+import com.citybus.model.RiderSession;
+import com.citybus.service.AssignmentRegistry;
 import com.citybus.service.AuthService;
 import com.citybus.service.BusTrackingService;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.citybus.service.EtaService;
+import com.citybus.service.FleetRegistry;
+import com.citybus.service.GeofenceService;
+import com.citybus.service.RouteMatch;
+import com.citybus.service.StopEvent;
+import com.citybus.service.StopEventLog;
+import com.citybus.service.TrackLog;
+import com.citybus.service.TrackingMetrics;
+import com.citybus.websocket.message.DriverRegisterMessage;
+import com.citybus.websocket.message.InboundMessage;
+import com.citybus.websocket.message.LocationMessage;
+import com.citybus.websocket.message.SnapshotAckMessage;
+import com.citybus.websocket.message.SubscriptionMessage;
+import com.citybus.websocket.message.TrackBusMessage;
+import com.citybus.websocket.message.UserRegisterMessage;
+import com.citybus.websocket.message.VisibilityMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
-public class BusTrackingWebSocketHandler implements WebSocketHandler {
+public class BusTrackingWebSocketHandler implements WebSocketHandler, SubProtocolCapable {
+
+    private static final Logger log = LoggerFactory.getLogger(BusTrackingWebSocketHandler.class);
 
     private final BusTrackingService busTrackingService;
+    private final FleetRegistry fleetRegistry;
+    private final AssignmentRegistry assignmentRegistry;
     private final AuthService authService;
+    private final EtaService etaService;
+    private final GeofenceService geofenceService;
+    private final TrackLog trackLog;
+    private final StopEventLog stopEventLog;
+    private final TrackingMetrics metrics;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InboundMessageParser messageParser = new InboundMessageParser(objectMapper);
+    private final Executor sendExecutor;
+    private final int sendBufferSize;
+    private final long sendTimeLimitMs;
 
     // Store active sessions
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, Object>> sessionData = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, Object>> activeDrivers = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, Object>> activeUsers = new ConcurrentHashMap<>();
-
-    public BusTrackingWebSocketHandler(BusTrackingService busTrackingService, AuthService authService) {
+    private final Map<String, OutboundSession> sessions = new ConcurrentHashMap<>();
+    private final SubscriptionIndex subscriptions;
+    private final FleetBus fleetBus;
+    private final FleetSnapshotLog fleetSnapshots;
+    private final LocationIngest locationIngest;
+    private final boolean ingestAcks;
+    private final long staleDriverTimeoutMs;
+
+    // Per-message debug lines are sampled so DEBUG can be switched on under full load
+    private final int debugSampleEvery;
+    private final AtomicLong debugSamples = new AtomicLong();
+
+    public BusTrackingWebSocketHandler(BusTrackingService busTrackingService,
+                                       AuthService authService,
+                                       EtaService etaService,
+                                       GeofenceService geofenceService,
+                                       TrackLog trackLog,
+                                       StopEventLog stopEventLog,
+                                       TrackingMetrics metrics,
+                                       FleetBus fleetBus,
+                                       @Qualifier("webSocketSendExecutor") Executor sendExecutor,
+                                       @Value("${citybus.websocket.send-buffer-size:64}") int sendBufferSize,
+                                       @Value("${citybus.websocket.send-time-limit-ms:10000}") long sendTimeLimitMs,
+                                       @Value("${citybus.websocket.snapshot-history:30}") int snapshotHistory,
+                                       @Value("${citybus.ingest.min-distance-m:5}") double ingestMinDistanceMeters,
+                                       @Value("${citybus.ingest.max-accuracy-m:25}") double ingestMaxAccuracyMeters,
+                                       @Value("${citybus.ingest.acks:true}") boolean ingestAcks,
+                                       @Value("${citybus.fleet-snapshot.stale-ttl-s:600}") long staleDriverTtlSeconds,
+                                       @Value("${citybus.logging.debug-sample-every:100}") int debugSampleEvery) {
         this.busTrackingService = busTrackingService;
+        this.fleetRegistry = busTrackingService.getFleetRegistry();
+        this.assignmentRegistry = busTrackingService.getAssignmentRegistry();
         this.authService = authService;
+        this.etaService = etaService;
+        this.geofenceService = geofenceService;
+        this.trackLog = trackLog;
+        this.stopEventLog = stopEventLog;
+        this.metrics = metrics;
+        this.fleetBus = fleetBus;
+        // This node subscribes on the fleet bus to exactly the topics its local riders use
+        this.subscriptions = new SubscriptionIndex(fleetBus::subscribe, fleetBus::unsubscribe);
+        this.sendExecutor = sendExecutor;
+        this.sendBufferSize = sendBufferSize;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.fleetSnapshots = new FleetSnapshotLog(snapshotHistory);
+        this.locationIngest = new LocationIngest(ingestMinDistanceMeters, ingestMaxAccuracyMeters);
+        this.ingestAcks = ingestAcks;
+        this.staleDriverTimeoutMs = staleDriverTtlSeconds * 1000;
+        this.debugSampleEvery = Math.max(1, debugSampleEvery);
+    }
+
+    @PostConstruct
+    public void joinFleetBus() {
+        fleetBus.setListener(this::onFleetEvent);
+        fleetBus.subscribe(FleetEvent.MEMBERSHIP_TOPIC);
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.put(session.getId(), session);
-        System.out.println("WebSocket connection established: " + session.getId());
+        sessions.put(session.getId(), new OutboundSession(session, sendExecutor, metrics, sendBufferSize, sendTimeLimitMs));
+        log.info("WebSocket connection established: {}", session.getId());
 
         // Send welcome message
         sendMessage(session, "connection-established", Map.of(
@@ -43,148 +134,324 @@ public class BusTrackingWebSocketHandler implements WebSocketHandler {
         ));
     }
 
+    // Clients that offer this subprotocol exchange location updates as binary frames
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(BinaryLocationCodec.SUBPROTOCOL);
+    }
+
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        long start = System.nanoTime();
+        if (message instanceof BinaryMessage) {
+            handleBinaryMessage(session, (BinaryMessage) message);
+            metrics.recordMessage("driver-location-binary", System.nanoTime() - start);
+            return;
+        }
+
+        String metricType = TrackingMetrics.TYPE_UNKNOWN;
         try {
-            String payload = message.getPayload().toString();
-            JsonNode jsonNode = objectMapper.readTree(payload);
-            String messageType = jsonNode.has("type") ? jsonNode.get("type").asText() : "unknown";
+            InboundMessage inbound = messageParser.parse(message.getPayload().toString());
+            String messageType = inbound.getType();
+            metricType = messageType;
 
-            System.out.println("Received message type: " + messageType + " from session: " + session.getId());
+            if (sampleDebug()) {
+                log.debug("Received message type: {} from session: {}", messageType, session.getId());
+            }
+
+            // Any frame keeps a rider alive; map-only riders send little besides snapshot acks
+            RiderSession rider = fleetRegistry.getRiderBySession(session.getId());
+            if (rider != null) {
+                rider.touch(System.currentTimeMillis());
+            }
 
             switch (messageType) {
                 case "driver-register":
-                    handleDriverRegister(session, jsonNode);
+                    handleDriverRegister(session, inbound.getData());
                     break;
                 case "driver-location":
-                    handleDriverLocation(session, jsonNode);
+                    handleDriverLocation(session, inbound.getData());
                     break;
                 case "user-register":
-                    handleUserRegister(session, jsonNode);
+                    handleUserRegister(session, inbound.getData());
                     break;
                 case "user-location":
-                    handleUserLocation(session, jsonNode);
+                    handleUserLocation(session, inbound.getData());
                     break;
                 case "get-active-buses":
                     handleGetActiveBuses(session);
                     break;
                 case "get-other-drivers":
-                    handleGetOtherDrivers(session, jsonNode);
+                    handleGetOtherDrivers(session);
                     break;
                 case "driver-visibility":
-                    handleDriverVisibility(session, jsonNode);
+                    handleDriverVisibility(session, inbound.getData());
                     break;
                 case "track-bus":
-                    handleTrackBus(session, jsonNode);
+                    handleTrackBus(session, inbound.getData());
+                    break;
+                case "subscribe":
+                    handleSubscribe(session, inbound.getData(), true);
+                    break;
+                case "unsubscribe":
+                    handleSubscribe(session, inbound.getData(), false);
+                    break;
+                case "active-buses-ack":
+                    handleActiveBusesAck(session, inbound.getData());
                     break;
                 case "ping":
                     handlePing(session);
                     break;
                 default:
+                    metricType = TrackingMetrics.TYPE_UNKNOWN;
                     sendErrorMessage(session, "Unknown message type: " + messageType);
             }
         } catch (Exception e) {
-            System.err.println("Error handling WebSocket message: " + e.getMessage());
+            log.warn("Error handling WebSocket message: {}", e.getMessage());
             sendErrorMessage(session, "Error processing message: " + e.getMessage());
+        } finally {
+            metrics.recordMessage(metricType, System.nanoTime() - start);
         }
     }
 
-    private void handleDriverRegister(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        if (data != null && data.has("driverId") && data.has("busId")) {
-            String driverId = data.get("driverId").asText();
-            String busId = data.get("busId").asText();
-
-            Map<String, Object> driverInfo = new HashMap<>();
-            driverInfo.put("sessionId", session.getId());
-            driverInfo.put("driverId", driverId);
-            driverInfo.put("busId", busId);
-            driverInfo.put("coords", null);
-            driverInfo.put("visible", true);
-            driverInfo.put("lastSeen", System.currentTimeMillis());
-            driverInfo.put("status", "active");
-
-            activeDrivers.put(driverId, driverInfo);
-            sessionData.put(session.getId(), driverInfo);
-
-            System.out.println("Driver registered: " + driverId + " with bus: " + busId);
-
-            sendMessage(session, "driver-registered", Map.of(
-                    "driverId", driverId,
-                    "busId", busId,
-                    "status", "success"
-            ));
-
-            // Broadcast to all users that a new driver is available
-            broadcastToUsers("new-driver-available", Map.of(
-                    "driverId", driverId,
-                    "busId", busId,
-                    "timestamp", System.currentTimeMillis()
-            ));
-        }
-    }
-
-    private void handleDriverLocation(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        if (data != null && data.has("driverId") && data.has("coords")) {
-            String driverId = data.get("driverId").asText();
-            String busId = data.has("busId") ? data.get("busId").asText() : null;
-            JsonNode coordsNode = data.get("coords");
-
-            if (coordsNode.isArray() && coordsNode.size() >= 2) {
-                double[] coords = new double[]{
-                        coordsNode.get(0).asDouble(),
-                        coordsNode.get(1).asDouble()
-                };
-
-                Map<String, Object> driverInfo = activeDrivers.get(driverId);
-                if (driverInfo != null) {
-                    driverInfo.put("coords", coords);
-                    driverInfo.put("lastSeen", System.currentTimeMillis());
-                    driverInfo.put("accuracy", data.has("accuracy") ? data.get("accuracy").asDouble() : 0);
-                    driverInfo.put("visible", data.has("visible") ? data.get("visible").asBoolean() : true);
-
-                    // Update bus tracking service
-                    if (busId != null) {
-                        BusLocation busLocation = new BusLocation();
-                        busLocation.setRouteId(busId.contains("bus-1") ? "1" : "2");
-                        busLocation.setCoords(coords);
-                        busLocation.setSource("driver");
-                        busTrackingService.updateBusLocation(busId, busLocation);
-                    }
-
-                    System.out.println("Updated location for driver: " + driverId + " at " + Arrays.toString(coords));
-
-                    sendMessage(session, "location-acknowledged", Map.of(
-                            "driverId", driverId,
-                            "timestamp", System.currentTimeMillis()
-                    ));
-
-                    // Broadcast to all users and other drivers
-                    broadcastLocationUpdate(driverInfo);
+    private boolean sampleDebug() {
+        return log.isDebugEnabled() && debugSamples.getAndIncrement() % debugSampleEvery == 0;
+    }
+
+    // Driver identity always comes from the token verified at handshake time, never from the payload
+    private void handleDriverRegister(WebSocketSession session, DriverRegisterMessage data) throws IOException {
+        AuthPrincipal principal = getPrincipal(session);
+        if (principal == null) {
+            // Clients that could not put the token on the handshake may still present it here
+            if (data != null && data.getToken() != null) {
+                principal = authService.authenticate(data.getToken());
+                if (principal != null) {
+                    session.getAttributes().put(AuthHandshakeInterceptor.PRINCIPAL_ATTRIBUTE, principal);
                 }
             }
         }
+
+        if (principal == null || !principal.isDriver() || principal.getBusId() == null) {
+            sendErrorMessage(session, "Driver authentication required");
+            return;
+        }
+
+        // A driver starting a shift may name the route (and trip) the bus is running
+        if (data != null && data.getRouteId() != null) {
+            try {
+                assignmentRegistry.assign(principal.getBusId(), data.getRouteId(), data.getTripId(),
+                        AssignmentRegistry.SOURCE_DRIVER);
+            } catch (IllegalArgumentException e) {
+                sendErrorMessage(session, e.getMessage());
+                return;
+            }
+        }
+        registerDriver(session, principal.getUsername(), principal.getBusId());
     }
 
-    private void handleUserRegister(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        String userId = data != null && data.has("userId") ? data.get("userId").asText() : "user_" + session.getId().substring(0, 8);
+    private AuthPrincipal getPrincipal(WebSocketSession session) {
+        return (AuthPrincipal) session.getAttributes().get(AuthHandshakeInterceptor.PRINCIPAL_ATTRIBUTE);
+    }
 
-        Map<String, Object> userInfo = new HashMap<>();
-        userInfo.put("sessionId", session.getId());
-        userInfo.put("userId", userId);
-        userInfo.put("coords", null);
-        userInfo.put("trackingBusId", null);
-        userInfo.put("lastSeen", System.currentTimeMillis());
+    private void registerDriver(WebSocketSession session, String driverId, String busId) throws IOException {
+        int busIndex = fleetRegistry.getBusIndex(busId);
+        long now = System.currentTimeMillis();
+        DriverSession driver = new DriverSession(session.getId(), driverId, busId, busIndex, now);
+
+        // Taking over an entry restored after a restart, or one another node reported, keeps
+        // the bus on the map until the first fix
+        DriverSession restored = fleetRegistry.getDriver(driverId);
+        if (restored != null && restored.getSessionId() == null && busId.equals(restored.getBusId()) && restored.getPosition() != null) {
+            driver.updatePosition(restored.getPosition());
+            driver.setVisible(restored.isVisible());
+            driver.touch(now);
+        }
+        fleetRegistry.registerDriver(driver);
+        publishDriverState(driver);
+
+        log.info("Driver registered: {} with bus: {}", driverId, busId);
+
+        BusAssignment assignment = assignmentRegistry.get(busId);
+        Map<String, Object> registered = new HashMap<>();
+        registered.put("driverId", driverId);
+        registered.put("busId", busId);
+        registered.put("busIndex", busIndex);
+        registered.put("routeId", assignment != null ? assignment.getRouteId() : null);
+        registered.put("tripId", assignment != null ? assignment.getTripId() : null);
+        registered.put("status", "success");
+        sendMessage(session, "driver-registered", registered);
+
+        // Broadcast to all users that a new driver is available
+        broadcastToUsers("new-driver-available", Map.of(
+                "driverId", driverId,
+                "busId", busId,
+                "busIndex", busIndex,
+                "timestamp", System.currentTimeMillis()
+        ));
+    }
+
+    private void handleDriverLocation(WebSocketSession session, LocationMessage data) throws IOException {
+        DriverSession driver = fleetRegistry.getDriverBySession(session.getId());
+        if (driver == null) {
+            sendErrorMessage(session, "Driver is not registered on this connection");
+            return;
+        }
 
-        activeUsers.put(userId, userInfo);
-        sessionData.put(session.getId(), userInfo);
+        if (data != null && data.hasCoords()) {
+            double[] coords = data.getCoords();
+            acceptDriverLocation(session, driver, new Position(
+                    coords[0], coords[1], accuracyOf(data), System.currentTimeMillis()));
+        }
+    }
+
+    private void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        ByteBuffer payload = message.getPayload();
+        if (!BinaryLocationCodec.isLocationFrame(payload)) {
+            sendErrorMessage(session, "Unsupported binary frame");
+            return;
+        }
+
+        DriverSession driver = fleetRegistry.getDriverBySession(session.getId());
+        if (driver == null) {
+            sendErrorMessage(session, "Driver is not registered on this connection");
+            return;
+        }
 
-        System.out.println("User registered: " + userId);
+        try {
+            acceptDriverLocation(session, driver, BinaryLocationCodec.decodePosition(payload, System.currentTimeMillis()));
+        } catch (Exception e) {
+            log.warn("Error handling binary location frame: {}", e.getMessage());
+            sendErrorMessage(session, "Error processing message: " + e.getMessage());
+        }
+    }
+
+    // Shared by the JSON and binary location paths once the fix has been decoded.
+    // The fix is only queued here, for the track log writer and for flushLocationIngest,
+    // which publishes it on the next tick.
+    private void acceptDriverLocation(WebSocketSession session, DriverSession driver, Position position) {
+        if (!isValidLocation(position.getLat(), position.getLng())) {
+            sendErrorMessage(session, "Coordinates out of range");
+            return;
+        }
+
+        driver.touch(position.getTimestamp());
+        trackLog.append(driver.getBusId(), position);
+        locationIngest.offer(driver, position);
+    }
+
+    // Finite, off the poles (where longitude is meaningless) and within [-180, 180] longitude
+    private static boolean isValidLocation(double lat, double lng) {
+        return Double.isFinite(lat) && Double.isFinite(lng) && Math.abs(lat) < 90 && Math.abs(lng) <= 180;
+    }
+
+    // A missing, negative or non-numeric accuracy is treated as unknown (0), like an absent field
+    private static double accuracyOf(LocationMessage data) {
+        double accuracy = data.getAccuracy();
+        return Double.isFinite(accuracy) && accuracy > 0 ? accuracy : 0;
+    }
+
+    // Publishes at most one fix per bus per tick and sends each driver one batched ack
+    @Scheduled(fixedRateString = "${citybus.ingest.tick-ms:500}")
+    public void flushLocationIngest() {
+        for (LocationIngest.Emission emission : locationIngest.drain()) {
+            DriverSession driver = emission.getDriver();
+            try {
+                if (emission.getPosition() != null && fleetRegistry.getDriver(driver.getDriverId()) == driver) {
+                    publishDriverLocation(driver, emission.getPosition());
+                }
+                if (ingestAcks) {
+                    acknowledgeLocations(emission);
+                }
+            } catch (Exception e) {
+                log.warn("Error publishing location for driver {}: {}", driver.getDriverId(), e.getMessage());
+            }
+        }
+    }
+
+    private void acknowledgeLocations(LocationIngest.Emission emission) {
+        OutboundSession session = sessions.get(emission.getDriver().getSessionId());
+        if (session == null || !session.isOpen()) return;
+
+        OutboundFrame frame = encodeForBroadcast("location-acknowledged", Map.of(
+                "driverId", emission.getDriver().getDriverId(),
+                "timestamp", emission.getLatest().getTimestamp(),
+                "received", emission.getCoalesced(),
+                "published", emission.getPosition() != null
+        ));
+        if (frame != null) {
+            session.send(frame);
+        }
+    }
+
+    private void publishDriverLocation(DriverSession driver, Position position) {
+        String busId = driver.getBusId();
+        String routeId = assignmentRegistry.getRouteId(busId);
+
+        // Riders see the position snapped onto the route; fixes too far off it pass through raw
+        RouteMatch match = busTrackingService.matchToRoute(busId, routeId, position.getLat(), position.getLng());
+        if (match != null && match.isMatched()) {
+            position = new Position(match.getLat(), match.getLng(), position.getAccuracy(), position.getTimestamp());
+        }
+        driver.updatePosition(position);
+        double[] coords = position.toCoords();
+
+        // Update bus tracking service
+        BusLocation busLocation = new BusLocation();
+        busLocation.setRouteId(routeId);
+        busLocation.setCoords(coords);
+        busLocation.setNextStop(match != null ? match.getNextStop() : null);
+        busLocation.setSource("driver");
+        busTrackingService.updateBusLocation(busId, busLocation);
+
+        Map<String, Object> eta = etaService.onBusProgress(busId, match, position.getTimestamp());
+        if (eta != null) {
+            broadcastToSubscribers(encodeForBroadcast("eta-update", eta), null, busId, routeId);
+            fleetBus.publish(new FleetEvent(FleetEvent.ETA, fleetBus.getNodeId(), busId, routeId, eta));
+        }
+        for (StopEvent stopEvent : geofenceService.onBusProgress(busId, match, position.getTimestamp())) {
+            publishStopEvent(driver, stopEvent);
+        }
+        sendProximityAlerts(busTrackingService.checkProximityNotifications(busId, coords[0], coords[1]));
+
+        if (sampleDebug()) {
+            log.debug("Updated location for driver: {} at {}", driver.getDriverId(), Arrays.toString(coords));
+        }
+
+        // Broadcast to all users and other drivers
+        broadcastLocationUpdate(driver);
+    }
+
+    // Arrivals and departures go to the bus's subscribers on every node and into the history log
+    private void publishStopEvent(DriverSession driver, StopEvent event) {
+        stopEventLog.append(event);
+
+        Map<String, Object> data = event.toMessage();
+        data.put("driverId", driver.getDriverId());
+        broadcastToSubscribers(encodeForBroadcast(event.getType(), data), null, event.getBusId(), event.getRouteId());
+        fleetBus.publish(new FleetEvent(event.getType(), fleetBus.getNodeId(), event.getBusId(), event.getRouteId(), data));
+    }
+
+    private void handleUserRegister(WebSocketSession session, UserRegisterMessage data) throws IOException {
+        String userId = data != null && data.getUserId() != null ? data.getUserId() : "user_" + session.getId().substring(0, 8);
+
+        RiderSession rider = new RiderSession(session.getId(), userId, System.currentTimeMillis());
+        rider.setSnapshotDeltas(data != null && data.isSnapshotDeltas());
+        busTrackingService.addUserConnection(rider);
+
+        // Clients that do not ask for specific topics keep receiving every bus
+        List<String> topics = readTopics(data != null ? data.getSubscriptions() : null);
+        if (topics.isEmpty()) {
+            topics = List.of(SubscriptionIndex.ALL);
+        }
+        for (String topic : topics) {
+            subscriptions.subscribe(session.getId(), topic);
+        }
+
+        log.info("User registered: {} subscribed to {}", userId, topics);
 
         sendMessage(session, "user-registered", Map.of(
                 "userId", userId,
+                "subscriptions", subscriptions.getTopics(session.getId()),
                 "status", "success"
         ));
 
@@ -192,26 +459,17 @@ public class BusTrackingWebSocketHandler implements WebSocketHandler {
         sendActiveBusesToUser(session);
     }
 
-    private void handleUserLocation(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        if (data != null && data.has("coords")) {
-            JsonNode coordsNode = data.get("coords");
-            if (coordsNode.isArray() && coordsNode.size() >= 2) {
-                double[] coords = new double[]{
-                        coordsNode.get(0).asDouble(),
-                        coordsNode.get(1).asDouble()
-                };
-
-                Map<String, Object> sessionInfo = sessionData.get(session.getId());
-                if (sessionInfo != null) {
-                    sessionInfo.put("coords", coords);
-                    sessionInfo.put("lastSeen", System.currentTimeMillis());
-
-                    String userId = (String) sessionInfo.get("userId");
-                    if (userId != null && activeUsers.containsKey(userId)) {
-                        activeUsers.get(userId).put("coords", coords);
-                    }
-                }
+    private void handleUserLocation(WebSocketSession session, LocationMessage data) throws IOException {
+        if (data != null && data.hasCoords()) {
+            double[] coords = data.getCoords();
+            if (!isValidLocation(coords[0], coords[1])) {
+                sendErrorMessage(session, "Coordinates out of range");
+                return;
+            }
+            RiderSession rider = fleetRegistry.getRiderBySession(session.getId());
+            if (rider != null) {
+                Position position = new Position(coords[0], coords[1], accuracyOf(data), System.currentTimeMillis());
+                busTrackingService.updateUserLocation(rider, position);
             }
         }
     }
@@ -220,56 +478,42 @@ public class BusTrackingWebSocketHandler implements WebSocketHandler {
         sendActiveBusesToUser(session);
     }
 
-    private void handleGetOtherDrivers(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        String requestingDriverId = data != null && data.has("driverId") ? data.get("driverId").asText() : null;
+    private void handleGetOtherDrivers(WebSocketSession session) throws IOException {
+        DriverSession requestingDriver = fleetRegistry.getDriverBySession(session.getId());
+        String requestingDriverId = requestingDriver != null ? requestingDriver.getDriverId() : null;
 
         List<Map<String, Object>> otherDrivers = new ArrayList<>();
-        for (Map.Entry<String, Map<String, Object>> entry : activeDrivers.entrySet()) {
-            String driverId = entry.getKey();
-            Map<String, Object> driverInfo = entry.getValue();
-
-            if (!driverId.equals(requestingDriverId) && Boolean.TRUE.equals(driverInfo.get("visible"))) {
-                Map<String, Object> driverData = new HashMap<>();
-                driverData.put("driverId", driverId);
-                driverData.put("busId", driverInfo.get("busId"));
-                driverData.put("coords", driverInfo.get("coords"));
-                driverData.put("lastSeen", driverInfo.get("lastSeen"));
-                driverData.put("status", driverInfo.get("status"));
-                otherDrivers.add(driverData);
+        for (DriverSession driver : fleetRegistry.getDrivers()) {
+            if (!driver.getDriverId().equals(requestingDriverId) && driver.isVisible()) {
+                otherDrivers.add(toDriverData(driver, driver.getPosition(), true));
             }
         }
 
         sendMessage(session, "other-drivers", otherDrivers);
     }
 
-    private void handleDriverVisibility(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        if (data != null && data.has("driverId")) {
-            String driverId = data.get("driverId").asText();
-            boolean visible = data.has("visible") ? data.get("visible").asBoolean() : true;
-
-            Map<String, Object> driverInfo = activeDrivers.get(driverId);
-            if (driverInfo != null) {
-                driverInfo.put("visible", visible);
-                System.out.println("Driver " + driverId + " visibility set to: " + visible);
-            }
+    private void handleDriverVisibility(WebSocketSession session, VisibilityMessage data) throws IOException {
+        DriverSession driver = fleetRegistry.getDriverBySession(session.getId());
+        if (data != null && driver != null) {
+            boolean visible = data.isVisible();
+            driver.setVisible(visible);
+            publishDriverState(driver);
+            log.info("Driver {} visibility set to: {}", driver.getDriverId(), visible);
         }
     }
 
-    private void handleTrackBus(WebSocketSession session, JsonNode jsonNode) throws IOException {
-        JsonNode data = jsonNode.get("data");
-        if (data != null && data.has("busId")) {
-            String busId = data.get("busId").asText();
+    private void handleTrackBus(WebSocketSession session, TrackBusMessage data) throws IOException {
+        if (data != null && data.getBusId() != null) {
+            String busId = data.getBusId();
 
-            Map<String, Object> sessionInfo = sessionData.get(session.getId());
-            if (sessionInfo != null) {
-                sessionInfo.put("trackingBusId", busId);
-
-                String userId = (String) sessionInfo.get("userId");
-                if (userId != null && activeUsers.containsKey(userId)) {
-                    activeUsers.get(userId).put("trackingBusId", busId);
+            RiderSession rider = fleetRegistry.getRiderBySession(session.getId());
+            if (rider != null) {
+                String previousBusId = rider.getTrackingBusId();
+                if (previousBusId != null && !previousBusId.equals(busId)) {
+                    subscriptions.unsubscribe(session.getId(), SubscriptionIndex.busTopic(previousBusId));
                 }
+                subscriptions.subscribe(session.getId(), SubscriptionIndex.busTopic(busId));
+                busTrackingService.setUserTrackingBus(rider, busId);
 
                 sendMessage(session, "tracking-started", Map.of(
                         "busId", busId,
@@ -279,129 +523,382 @@ public class BusTrackingWebSocketHandler implements WebSocketHandler {
         }
     }
 
+    private void handleSubscribe(WebSocketSession session, SubscriptionMessage data, boolean subscribe) throws IOException {
+        List<String> topics = new ArrayList<>();
+        if (data != null) {
+            topics.addAll(readTopics(data.getTopics()));
+            if (data.getTopic() != null) topics.add(data.getTopic());
+            if (data.getRouteId() != null) topics.add(SubscriptionIndex.routeTopic(data.getRouteId()));
+            if (data.getBusId() != null) topics.add(SubscriptionIndex.busTopic(data.getBusId()));
+            if (data.isAll()) topics.add(SubscriptionIndex.ALL);
+        }
+
+        if (topics.isEmpty()) {
+            sendErrorMessage(session, "No valid subscription topic given");
+            return;
+        }
+
+        for (String topic : topics) {
+            if (subscribe) {
+                subscriptions.subscribe(session.getId(), topic);
+            } else {
+                subscriptions.unsubscribe(session.getId(), topic);
+            }
+        }
+
+        sendMessage(session, subscribe ? "subscribed" : "unsubscribed", Map.of(
+                "topics", topics,
+                "subscriptions", subscriptions.getTopics(session.getId())
+        ));
+    }
+
+    private List<String> readTopics(List<String> requested) {
+        List<String> topics = new ArrayList<>();
+        if (requested != null) {
+            for (String topic : requested) {
+                if (topic != null && SubscriptionIndex.isValidTopic(topic)) {
+                    topics.add(topic);
+                }
+            }
+        }
+        return topics;
+    }
+
     private void handlePing(WebSocketSession session) throws IOException {
         sendMessage(session, "pong", Map.of("timestamp", System.currentTimeMillis()));
     }
 
+    private void handleActiveBusesAck(WebSocketSession session, SnapshotAckMessage data) {
+        RiderSession rider = fleetRegistry.getRiderBySession(session.getId());
+        if (rider == null || data == null) return;
+
+        // Ignore acks for versions that were never sent or that would move the rider backwards
+        long version = data.getVersion();
+        if (version <= fleetSnapshots.getVersion() && version > rider.getSnapshotVersion()) {
+            rider.setSnapshotVersion(version);
+        }
+    }
+
     private void sendActiveBusesToUser(WebSocketSession session) throws IOException {
-        List<Map<String, Object>> activeBuses = new ArrayList<>();
+        RiderSession rider = fleetRegistry.getRiderBySession(session.getId());
+        if (rider != null && rider.isSnapshotDeltas()) {
+            // Bring the log up to date so the full snapshot reflects live positions
+            fleetSnapshots.advance(fleetRegistry.getDrivers(), this::toSnapshotData);
+            sendMessage(session, "active-buses-delta", fleetSnapshots.full().toMessage());
+            return;
+        }
+        sendMessage(session, "active-buses", collectActiveBuses(true));
+    }
 
-        for (Map.Entry<String, Map<String, Object>> entry : activeDrivers.entrySet()) {
-            Map<String, Object> driverInfo = entry.getValue();
-            if (Boolean.TRUE.equals(driverInfo.get("visible")) && driverInfo.get("coords") != null) {
-                Map<String, Object> busData = new HashMap<>();
-                busData.put("busId", driverInfo.get("busId"));
-                busData.put("driverId", entry.getKey());
-                busData.put("coords", driverInfo.get("coords"));
-                busData.put("lastSeen", driverInfo.get("lastSeen"));
-                busData.put("status", driverInfo.get("status"));
-                activeBuses.add(busData);
+    private List<Map<String, Object>> collectActiveBuses(boolean includeStatus) {
+        List<Map<String, Object>> activeBuses = new ArrayList<>();
+        for (DriverSession driver : fleetRegistry.getDrivers()) {
+            Position position = driver.getPosition();
+            if (driver.isVisible() && position != null) {
+                activeBuses.add(toDriverData(driver, position, includeStatus));
             }
         }
+        return activeBuses;
+    }
+
+    private Map<String, Object> toDriverData(DriverSession driver, Position position, boolean includeStatus) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("busId", driver.getBusId());
+        data.put("busIndex", driver.getBusIndex());
+        data.put("driverId", driver.getDriverId());
+        data.put("coords", position != null ? position.toCoords() : null);
+        data.put("lastSeen", driver.getLastSeen());
+        // Restored drivers are always flagged so clients can show them as last known positions
+        if (includeStatus || driver.isStale()) {
+            data.put("status", driver.getStatus());
+        }
+        return data;
+    }
+
+    private Map<String, Object> toSnapshotData(DriverSession driver, Position position) {
+        return toDriverData(driver, position, false);
+    }
+
+    private void sendProximityAlerts(List<Map<String, Object>> notifications) {
+        for (Map<String, Object> notification : notifications) {
+            OutboundSession session = sessions.get((String) notification.get("sessionId"));
+            if (session == null || !session.isOpen()) continue;
 
-        sendMessage(session, "active-buses", activeBuses);
+            Map<String, Object> alert = new HashMap<>(notification);
+            alert.remove("sessionId");
+            OutboundFrame frame = encodeForBroadcast("proximity-alert", alert);
+            if (frame != null) {
+                session.send(frame);
+            }
+        }
     }
 
-    private void broadcastLocationUpdate(Map<String, Object> driverInfo) {
-        if (!Boolean.TRUE.equals(driverInfo.get("visible"))) return;
+    private void broadcastLocationUpdate(DriverSession driver) {
+        Position position = driver.getPosition();
+        if (!driver.isVisible() || position == null) return;
 
         Map<String, Object> locationData = new HashMap<>();
-        locationData.put("driverId", driverInfo.get("driverId"));
-        locationData.put("busId", driverInfo.get("busId"));
-        locationData.put("coords", driverInfo.get("coords"));
-        locationData.put("timestamp", System.currentTimeMillis());
+        locationData.put("driverId", driver.getDriverId());
+        locationData.put("busId", driver.getBusId());
+        locationData.put("busIndex", driver.getBusIndex());
+        locationData.put("coords", position.toCoords());
+        locationData.put("timestamp", position.getTimestamp());
+
+        // Deliver only to riders subscribed to this bus, its route, or everything
+        String busId = driver.getBusId();
+        BusLocation busLocation = busId != null ? busTrackingService.getBusLocation(busId) : null;
+        String routeId = busLocation != null ? busLocation.getRouteId() : null;
+        if (busLocation != null && busLocation.getNextStop() != null) {
+            locationData.put("nextStop", busLocation.getNextStop());
+        }
+        fanOutLocation(driver, position, locationData, routeId);
 
-        // Broadcast to all users
-        broadcastToUsers("bus-location-update", locationData);
+        // Other nodes deliver the same update to their own subscribers
+        fleetBus.publish(new FleetEvent(FleetEvent.LOCATION, fleetBus.getNodeId(), busId, routeId, locationData));
+    }
+
+    // Rider frames carry the fix's ingest time so delivery records the propagation latency
+    private void fanOutLocation(DriverSession driver, Position position, Map<String, Object> locationData, String routeId) {
+        OutboundFrame jsonFrame = encodeForBroadcast("bus-location-update", locationData);
+        if (jsonFrame != null) {
+            jsonFrame = jsonFrame.withIngestTime(position.getTimestamp());
+        }
+        OutboundFrame binaryFrame = OutboundFrame.binary("bus-location-update",
+                BinaryLocationCodec.encode(driver.getBusIndex(), position)).withIngestTime(position.getTimestamp());
+        broadcastToSubscribers(jsonFrame, binaryFrame, driver.getBusId(), routeId);
 
         // Broadcast to other drivers
-        broadcastToOtherDrivers("driver-location-update", locationData, (String) driverInfo.get("driverId"));
+        broadcastToOtherDrivers("driver-location-update", locationData, driver.getDriverId());
+    }
+
+    private void publishDriverState(DriverSession driver) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("driverId", driver.getDriverId());
+        state.put("busId", driver.getBusId());
+        state.put("visible", driver.isVisible());
+        fleetBus.publish(new FleetEvent(FleetEvent.DRIVER_STATE, fleetBus.getNodeId(), driver.getBusId(), null, state));
+    }
+
+    // A parked bus publishes no fixes, so the state of every driver connected here is re-sent
+    // well inside the inactivity timeout to keep other nodes from expiring it
+    @Scheduled(fixedRateString = "${citybus.cluster.heartbeat-ms:30000}")
+    public void publishDriverHeartbeats() {
+        for (DriverSession driver : fleetRegistry.getDrivers()) {
+            if (driver.getSessionId() != null) {
+                publishDriverState(driver);
+            }
+        }
+    }
+
+    private void publishDriverLeft(DriverSession driver) {
+        fleetBus.publish(new FleetEvent(FleetEvent.DRIVER_LEFT, fleetBus.getNodeId(), driver.getBusId(), null,
+                Map.of("driverId", driver.getDriverId())));
+    }
+
+    // Updates published by other nodes, applied as if their drivers were connected here without a session
+    private void onFleetEvent(FleetEvent event) {
+        String driverId = (String) event.getData().get("driverId");
+        if (driverId == null || event.getBusId() == null) return;
+
+        switch (event.getType()) {
+            case FleetEvent.LOCATION:
+                applyRemoteLocation(event, driverId);
+                break;
+            case FleetEvent.ETA:
+                broadcastToSubscribers(encodeForBroadcast("eta-update", event.getData()), null,
+                        event.getBusId(), event.getRouteId());
+                break;
+            case FleetEvent.STOP_ARRIVED:
+            case FleetEvent.STOP_DEPARTED:
+                broadcastToSubscribers(encodeForBroadcast(event.getType(), event.getData()), null,
+                        event.getBusId(), event.getRouteId());
+                break;
+            case FleetEvent.DRIVER_STATE:
+                DriverSession driver = remoteDriver(driverId, event.getBusId());
+                if (driver != null) {
+                    driver.setVisible(!Boolean.FALSE.equals(event.getData().get("visible")));
+                    driver.touch(System.currentTimeMillis());
+                }
+                break;
+            case FleetEvent.DRIVER_LEFT:
+                DriverSession remote = fleetRegistry.getDriver(driverId);
+                if (remote != null && remote.isRemote() && fleetRegistry.removeDriver(remote)) {
+                    broadcastToUsers("driver-left", Map.of("driverId", driverId));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void applyRemoteLocation(FleetEvent event, String driverId) {
+        double[] coords = event.getCoords();
+        Object timestamp = event.getData().get("timestamp");
+        DriverSession driver = remoteDriver(driverId, event.getBusId());
+        if (driver == null || coords == null || !(timestamp instanceof Number)) return;
+
+        Position position = new Position(coords[0], coords[1], 0, ((Number) timestamp).longValue());
+        driver.updatePosition(position);
+        String nextStop = (String) event.getData().get("nextStop");
+        busTrackingService.updateBusLocation(driver.getBusId(),
+                new BusLocation(event.getRouteId(), coords, nextStop, "remote"));
+
+        // Bus indexes are per node, so clients here get this node's index for the bus
+        Map<String, Object> locationData = new HashMap<>(event.getData());
+        locationData.put("busIndex", driver.getBusIndex());
+        locationData.put("coords", coords);
+        if (driver.isVisible()) {
+            fanOutLocation(driver, position, locationData, event.getRouteId());
+        }
+        sendProximityAlerts(busTrackingService.checkProximityNotifications(driver.getBusId(), coords[0], coords[1]));
+    }
+
+    // Entry for a driver connected to another node; null when the driver is connected to this one
+    private DriverSession remoteDriver(String driverId, String busId) {
+        DriverSession driver = fleetRegistry.getDriver(driverId);
+        if (driver != null && driver.getSessionId() != null) return null;
+        if (driver != null && driver.isRemote() && busId.equals(driver.getBusId())) return driver;
+
+        long now = System.currentTimeMillis();
+        DriverSession remote = new DriverSession(null, driverId, busId, fleetRegistry.getBusIndex(busId), now);
+        if (driver != null && busId.equals(driver.getBusId()) && driver.getPosition() != null) {
+            remote.updatePosition(driver.getPosition());
+            remote.touch(now);
+        }
+        fleetRegistry.registerDriver(remote);
+        return remote;
     }
 
     private void broadcastToUsers(String messageType, Object data) {
-        for (Map.Entry<String, Map<String, Object>> entry : activeUsers.entrySet()) {
-            Map<String, Object> userInfo = entry.getValue();
-            String sessionId = (String) userInfo.get("sessionId");
-            WebSocketSession session = sessions.get(sessionId);
+        long start = System.nanoTime();
+        OutboundFrame frame = encodeForBroadcast(messageType, data);
+        if (frame == null) return;
+
+        int recipients = 0;
+        for (RiderSession rider : fleetRegistry.getRiders()) {
+            OutboundSession session = sessions.get(rider.getSessionId());
 
             if (session != null && session.isOpen()) {
-                try {
-                    sendMessage(session, messageType, data);
-                } catch (IOException e) {
-                    System.err.println("Failed to send message to user: " + e.getMessage());
-                }
+                session.send(frame);
+                recipients++;
             }
         }
+        metrics.recordBroadcast(messageType, recipients, System.nanoTime() - start);
+    }
+
+    // Each encoding is produced once; every subscriber gets the one matching its negotiated protocol
+    private void broadcastToSubscribers(OutboundFrame jsonFrame, OutboundFrame binaryFrame, String busId, String routeId) {
+        if (jsonFrame == null) return;
+
+        long start = System.nanoTime();
+        int[] recipients = new int[1];
+        subscriptions.forEachSubscriber(busId, routeId, sessionId -> {
+            OutboundSession session = sessions.get(sessionId);
+            if (session != null && session.isOpen()) {
+                session.send(session.isBinary() && binaryFrame != null ? binaryFrame : jsonFrame);
+                recipients[0]++;
+            }
+        });
+        metrics.recordBroadcast(jsonFrame.getType(), recipients[0], System.nanoTime() - start);
     }
 
     private void broadcastToOtherDrivers(String messageType, Object data, String excludeDriverId) {
-        for (Map.Entry<String, Map<String, Object>> entry : activeDrivers.entrySet()) {
-            String driverId = entry.getKey();
-            if (!driverId.equals(excludeDriverId)) {
-                Map<String, Object> driverInfo = entry.getValue();
-                String sessionId = (String) driverInfo.get("sessionId");
-                WebSocketSession session = sessions.get(sessionId);
+        long start = System.nanoTime();
+        OutboundFrame frame = encodeForBroadcast(messageType, data);
+        if (frame == null) return;
+
+        int recipients = 0;
+        for (DriverSession driver : fleetRegistry.getDrivers()) {
+            if (!driver.getDriverId().equals(excludeDriverId) && driver.getSessionId() != null) {
+                OutboundSession session = sessions.get(driver.getSessionId());
 
                 if (session != null && session.isOpen()) {
-                    try {
-                        sendMessage(session, messageType, data);
-                    } catch (IOException e) {
-                        System.err.println("Failed to send message to driver " + driverId + ": " + e.getMessage());
-                    }
+                    session.send(frame);
+                    recipients++;
                 }
             }
         }
+        metrics.recordBroadcast(messageType, recipients, System.nanoTime() - start);
+    }
+
+    // Encode a broadcast payload once so every recipient shares the same frame
+    private OutboundFrame encodeForBroadcast(String messageType, Object data) {
+        try {
+            return OutboundFrame.encode(objectMapper, messageType, data);
+        } catch (IOException e) {
+            log.warn("Failed to encode {} broadcast: {}", messageType, e.getMessage());
+            return null;
+        }
     }
 
     private void sendMessage(WebSocketSession session, String type, Object data) throws IOException {
         if (session.isOpen()) {
-            Map<String, Object> message = new HashMap<>();
-            message.put("type", type);
-            message.put("data", data);
-            String jsonMessage = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(jsonMessage));
+            send(session, OutboundFrame.encode(objectMapper, type, data));
+        }
+    }
+
+    // All writes go through the session's outbound queue so a slow client never blocks the caller
+    private void send(WebSocketSession session, OutboundFrame frame) {
+        OutboundSession outbound = sessions.get(session.getId());
+        if (outbound != null) {
+            outbound.send(frame);
         }
     }
 
+    public Map<String, Object> getIngestStats() {
+        return locationIngest.getStats();
+    }
+
+    public List<Map<String, Object>> getOutboundStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (OutboundSession session : sessions.values()) {
+            stats.add(session.getStats());
+        }
+        return stats;
+    }
+
     private void sendErrorMessage(WebSocketSession session, String errorMessage) {
         try {
             sendMessage(session, "error", Map.of("message", errorMessage));
         } catch (IOException e) {
-            System.err.println("Failed to send error message: " + e.getMessage());
+            log.warn("Failed to send error message: {}", e.getMessage());
         }
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        System.err.println("WebSocket transport error for session " + session.getId() + ": " + exception.getMessage());
+        log.warn("WebSocket transport error for session {}: {}", session.getId(), exception.getMessage());
         cleanupSession(session);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
-        System.out.println("WebSocket connection closed: " + session.getId() + " - " + closeStatus);
+        log.info("WebSocket connection closed: {} - {}", session.getId(), closeStatus);
         cleanupSession(session);
     }
 
     private void cleanupSession(WebSocketSession session) {
-        sessions.remove(session.getId());
-        Map<String, Object> sessionInfo = sessionData.remove(session.getId());
-
-        if (sessionInfo != null) {
-            String driverId = (String) sessionInfo.get("driverId");
-            String userId = (String) sessionInfo.get("userId");
-
-            if (driverId != null) {
-                activeDrivers.remove(driverId);
-                // Notify users that driver left
-                broadcastToUsers("driver-left", Map.of("driverId", driverId));
-                System.out.println("Driver disconnected: " + driverId);
-            }
+        subscriptions.unsubscribeAll(session.getId());
+        OutboundSession outbound = sessions.remove(session.getId());
+        if (outbound != null) {
+            outbound.close();
+        }
 
-            if (userId != null) {
-                activeUsers.remove(userId);
-                System.out.println("User disconnected: " + userId);
-            }
+        DriverSession driver = fleetRegistry.getDriverBySession(session.getId());
+        if (driver != null && fleetRegistry.removeDriver(driver)) {
+            locationIngest.discard(driver);
+            etaService.forget(driver.getBusId());
+            geofenceService.forget(driver.getBusId());
+            // Notify users that driver left
+            broadcastToUsers("driver-left", Map.of("driverId", driver.getDriverId()));
+            publishDriverLeft(driver);
+            log.info("Driver disconnected: {}", driver.getDriverId());
+        }
+
+        RiderSession rider = fleetRegistry.getRiderBySession(session.getId());
+        if (rider != null) {
+            busTrackingService.removeUserConnection(rider);
+            log.info("User disconnected: {}", rider.getUserId());
         }
     }
 
@@ -410,28 +907,49 @@ public class BusTrackingWebSocketHandler implements WebSocketHandler {
         return false;
     }
 
-    // Scheduled task to send active buses to users every 10 seconds
+    // Scheduled task to send active buses to users every 10 seconds.
+    // Riders that opted into deltas only get the buses that changed since their
+    // acknowledged version, and nothing at all when they are already current.
     @Scheduled(fixedRate = 10000)
     public void broadcastActiveBuses() {
-        if (activeUsers.isEmpty()) return;
-
-        List<Map<String, Object>> activeBuses = new ArrayList<>();
-
-        for (Map.Entry<String, Map<String, Object>> entry : activeDrivers.entrySet()) {
-            Map<String, Object> driverInfo = entry.getValue();
-            if (Boolean.TRUE.equals(driverInfo.get("visible")) && driverInfo.get("coords") != null) {
-                Map<String, Object> busData = new HashMap<>();
-                busData.put("busId", driverInfo.get("busId"));
-                busData.put("driverId", entry.getKey());
-                busData.put("coords", driverInfo.get("coords"));
-                busData.put("lastSeen", driverInfo.get("lastSeen"));
-                activeBuses.add(busData);
+        if (fleetRegistry.getRiderCount() == 0) return;
+
+        long start = System.nanoTime();
+        int recipients = 0;
+        fleetSnapshots.advance(fleetRegistry.getDrivers(), this::toSnapshotData);
+
+        // Riders share a handful of base versions, so each delta is encoded once per base
+        Map<Long, OutboundFrame> deltaFrames = new HashMap<>();
+        OutboundFrame fullListFrame = null;
+        boolean fullListEncoded = false;
+
+        for (RiderSession rider : fleetRegistry.getRiders()) {
+            OutboundSession session = sessions.get(rider.getSessionId());
+            if (session == null || !session.isOpen()) continue;
+
+            OutboundFrame frame;
+            if (rider.isSnapshotDeltas()) {
+                long base = rider.getSnapshotVersion();
+                if (!deltaFrames.containsKey(base)) {
+                    FleetSnapshotLog.Delta delta = fleetSnapshots.since(base);
+                    deltaFrames.put(base, delta != null ? encodeForBroadcast("active-buses-delta", delta.toMessage()) : null);
+                }
+                frame = deltaFrames.get(base);
+            } else {
+                if (!fullListEncoded) {
+                    List<Map<String, Object>> activeBuses = collectActiveBuses(false);
+                    fullListFrame = activeBuses.isEmpty() ? null : encodeForBroadcast("active-buses", activeBuses);
+                    fullListEncoded = true;
+                }
+                frame = fullListFrame;
             }
-        }
 
-        if (!activeBuses.isEmpty()) {
-            broadcastToUsers("active-buses", activeBuses);
+            if (frame != null) {
+                session.send(frame);
+                recipients++;
+            }
         }
+        metrics.recordBroadcast("active-buses", recipients, System.nanoTime() - start);
     }
 
     // Cleanup inactive sessions every 30 seconds
@@ -440,32 +958,47 @@ public class BusTrackingWebSocketHandler implements WebSocketHandler {
         long now = System.currentTimeMillis();
         long timeout = 2 * 60 * 1000; // 2 minutes
 
-        // Clean up inactive drivers
-        activeDrivers.entrySet().removeIf(entry -> {
-            Map<String, Object> driverInfo = entry.getValue();
-            Long lastSeen = (Long) driverInfo.get("lastSeen");
-            if (lastSeen != null && (now - lastSeen) > timeout) {
-                String sessionId = (String) driverInfo.get("sessionId");
-                sessions.remove(sessionId);
-                sessionData.remove(sessionId);
-                System.out.println("Removed inactive driver: " + entry.getKey());
-                return true;
+        // Clean up inactive drivers; ones restored from a snapshot get longer to reconnect
+        for (DriverSession driver : fleetRegistry.getDrivers()) {
+            long driverTimeout = driver.isStale() ? staleDriverTimeoutMs : timeout;
+            if (now - driver.getLastSeen() > driverTimeout && fleetRegistry.removeDriver(driver)) {
+                locationIngest.discard(driver);
+                etaService.forget(driver.getBusId());
+                geofenceService.forget(driver.getBusId());
+                if (driver.getSessionId() != null) {
+                    closeOutbound(driver.getSessionId());
+                    publishDriverLeft(driver);
+                }
+                log.info("Removed inactive driver: {}", driver.getDriverId());
             }
-            return false;
-        });
+        }
 
         // Clean up inactive users
-        activeUsers.entrySet().removeIf(entry -> {
-            Map<String, Object> userInfo = entry.getValue();
-            Long lastSeen = (Long) userInfo.get("lastSeen");
-            if (lastSeen != null && (now - lastSeen) > timeout) {
-                String sessionId = (String) userInfo.get("sessionId");
-                sessions.remove(sessionId);
-                sessionData.remove(sessionId);
-                System.out.println("Removed inactive user: " + entry.getKey());
-                return true;
+        for (RiderSession rider : fleetRegistry.getRiders()) {
+            if (now - rider.getLastSeen() > timeout) {
+                busTrackingService.removeUserConnection(rider);
+                closeOutbound(rider.getSessionId());
+                log.info("Removed inactive user: {}", rider.getUserId());
             }
-            return false;
-        });
+        }
+    }
+
+    // Close sessions whose pending write has been stuck past the send time limit. A stuck write holds a
+    // send thread, and nothing else notices it until the next frame for that session, so check often.
+    @Scheduled(fixedDelayString = "${citybus.websocket.send-watchdog-ms:1000}")
+    public void closeStuckSessions() {
+        for (OutboundSession session : sessions.values()) {
+            if (session.isSendTimeLimitExceeded()) {
+                session.closeAsUnreliable("send time limit exceeded");
+            }
+        }
+    }
+
+    private void closeOutbound(String sessionId) {
+        subscriptions.unsubscribeAll(sessionId);
+        OutboundSession outbound = sessions.remove(sessionId);
+        if (outbound != null) {
+            outbound.close(CloseStatus.GOING_AWAY);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package com.citybus.websocket;
+
+import com.citybus.model.DriverSession;
+import com.citybus.model.Position;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Versioned view of the visible fleet, used to send riders only what changed
+ * since the snapshot version they last acknowledged.
+ *
+ * Each call to {@link #advance} compares the fleet against the previous state.
+ * If any bus was added, moved or removed the version is bumped and the changed
+ * bus ids are recorded. A bus counts as moved when its driver published a new
+ * {@link Position}, which is cheap to detect because positions are immutable
+ * and swapped on every update.
+ *
+ * Only the most recent {@code historySize} versions are kept. A rider whose
+ * acknowledged version is older than that, or unknown, gets a full snapshot.
+ */
+public final class FleetSnapshotLog {
+
+    private final int historySize;
+
+    // All state is guarded by this
+    private long version;
+    private Map<String, BusState> current = Collections.emptyMap();
+    private final Deque<Change> history = new ArrayDeque<>();
+
+    public FleetSnapshotLog(int historySize) {
+        this.historySize = historySize;
+    }
+
+    private static final class BusState {
+        final DriverSession driver;
+        final Position position;
+        final Map<String, Object> data;
+
+        BusState(DriverSession driver, Position position, Map<String, Object> data) {
+            this.driver = driver;
+            this.position = position;
+            this.data = data;
+        }
+    }
+
+    // Bus ids touched by one version; a bus is in exactly one of the two sets
+    private static final class Change {
+        final long version;
+        final Set<String> updated;
+        final Set<String> removed;
+
+        Change(long version, Set<String> updated, Set<String> removed) {
+            this.version = version;
+            this.updated = updated;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * What a rider needs to catch up: either every bus ({@code full}) or the
+     * buses updated and removed after its base version.
+     */
+    public static final class Delta {
+        private final long version;
+        private final boolean full;
+        private final List<Map<String, Object>> updated;
+        private final List<String> removed;
+
+        Delta(long version, boolean full, List<Map<String, Object>> updated, List<String> removed) {
+            this.version = version;
+            this.full = full;
+            this.updated = updated;
+            this.removed = removed;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isFull() {
+            return full;
+        }
+
+        public List<Map<String, Object>> getUpdated() {
+            return updated;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public Map<String, Object> toMessage() {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("version", version);
+            message.put("full", full);
+            message.put("updated", updated);
+            message.put("removed", removed);
+            return message;
+        }
+    }
+
+    /**
+     * Records the current state of the visible fleet and returns the new
+     * version, which is unchanged when nothing moved.
+     */
+    public synchronized long advance(Collection<DriverSession> drivers,
+                                     BiFunction<DriverSession, Position, Map<String, Object>> toData) {
+        Map<String, BusState> next = new HashMap<>();
+        Set<String> updated = new LinkedHashSet<>();
+
+        for (DriverSession driver : drivers) {
+            Position position = driver.getPosition();
+            if (!driver.isVisible() || position == null) continue;
+
+            BusState previous = current.get(driver.getBusId());
+            if (previous != null && previous.driver == driver && previous.position == position) {
+                next.put(driver.getBusId(), previous);
+            } else {
+                next.put(driver.getBusId(), new BusState(driver, position, toData.apply(driver, position)));
+                updated.add(driver.getBusId());
+            }
+        }
+
+        Set<String> removed = new LinkedHashSet<>(current.keySet());
+        removed.removeAll(next.keySet());
+
+        current = next;
+        if (!updated.isEmpty() || !removed.isEmpty()) {
+            version++;
+            history.addLast(new Change(version, updated, removed));
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
+        return version;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the changes after {@code baseVersion}, a full snapshot if that
+     * version is no longer (or never was) in the history, or null if the base
+     * is already current.
+     */
+    public synchronized Delta since(long baseVersion) {
+        if (baseVersion == version) {
+            return null;
+        }
+        if (baseVersion < 0 || baseVersion > version || history.isEmpty()
+                || baseVersion < history.peekFirst().version - 1) {
+            return full();
+        }
+
+        // Replay in order so a bus removed and re-added ends up updated, and vice versa
+        Set<String> updated = new LinkedHashSet<>();
+        Set<String> removed = new LinkedHashSet<>();
+        for (Change change : history) {
+            if (change.version <= baseVersion) continue;
+            for (String busId : change.updated) {
+                removed.remove(busId);
+                updated.add(busId);
+            }
+            for (String busId : change.removed) {
+                updated.remove(busId);
+                removed.add(busId);
+            }
+        }
+
+        List<Map<String, Object>> updatedData = new ArrayList<>(updated.size());
+        for (String busId : updated) {
+            updatedData.add(current.get(busId).data);
+        }
+        return new Delta(version, false, updatedData, new ArrayList<>(removed));
+    }
+
+    public synchronized Delta full() {
+        List<Map<String, Object>> buses = new ArrayList<>(current.size());
+        for (BusState state : current.values()) {
+            buses.add(state.data);
+        }
+        return new Delta(version, true, buses, Collections.emptyList());
+    }
+}
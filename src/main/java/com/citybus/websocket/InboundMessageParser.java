@@ -0,0 +1,105 @@
+package com.citybus.websocket;
+
+import com.citybus.websocket.message.DriverRegisterMessage;
+import com.citybus.websocket.message.InboundMessage;
+import com.citybus.websocket.message.LocationMessage;
+import com.citybus.websocket.message.SnapshotAckMessage;
+import com.citybus.websocket.message.SubscriptionMessage;
+import com.citybus.websocket.message.TrackBusMessage;
+import com.citybus.websocket.message.UserRegisterMessage;
+import com.citybus.websocket.message.VisibilityMessage;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses client messages with Jackson's streaming parser instead of building
+ * a JsonNode tree for every message.
+ *
+ * The envelope's {@code type} is read first and its {@code data} object is
+ * bound straight from the token stream through a cached {@link ObjectReader}
+ * for that type's message class. Types without a payload class (ping,
+ * get-active-buses, ...) skip their data entirely. Only when a client sends
+ * {@code data} before {@code type} is the payload buffered as a tree and
+ * bound afterwards.
+ */
+public class InboundMessageParser {
+
+    private static final String UNKNOWN_TYPE = "unknown";
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, ObjectReader> readers = new HashMap<>();
+
+    public InboundMessageParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        register("driver-register", DriverRegisterMessage.class);
+        register("driver-location", LocationMessage.class);
+        register("user-register", UserRegisterMessage.class);
+        register("user-location", LocationMessage.class);
+        register("driver-visibility", VisibilityMessage.class);
+        register("track-bus", TrackBusMessage.class);
+        register("subscribe", SubscriptionMessage.class);
+        register("unsubscribe", SubscriptionMessage.class);
+        register("active-buses-ack", SnapshotAckMessage.class);
+    }
+
+    private void register(String type, Class<?> messageClass) {
+        readers.put(type, objectMapper.readerFor(messageClass)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    public InboundMessage parse(String payload) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+
+            String type = null;
+            Object data = null;
+            JsonNode pendingData = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if ("type".equals(field) && value.isScalarValue()) {
+                    type = parser.getValueAsString();
+                } else if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    if (type != null) {
+                        data = bind(type, parser);
+                    } else {
+                        pendingData = parser.readValueAsTree();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (type == null) {
+                type = UNKNOWN_TYPE;
+            }
+            if (pendingData != null) {
+                ObjectReader reader = readers.get(type);
+                data = reader != null ? reader.readValue(pendingData) : null;
+            }
+            return new InboundMessage(type, data);
+        }
+    }
+
+    private Object bind(String type, JsonParser parser) throws IOException {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            parser.skipChildren();
+            return null;
+        }
+        return reader.readValue(parser);
+    }
+}
@@ -0,0 +1,177 @@
+package com.citybus.websocket;
+
+import com.citybus.model.DriverSession;
+import com.citybus.model.Position;
+import com.citybus.util.DistanceCalculator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces driver location fixes per bus between fan-out ticks.
+ *
+ * {@link #offer} only records the fix as the bus's pending position (last
+ * write wins), so a phone reporting several times a second costs one map
+ * write per message. {@link #drain} is called once per tick and hands back at
+ * most one position per bus to publish.
+ *
+ * A drained fix is suppressed as jitter when it lies within the minimum
+ * distance of the last published position, or within its own reported
+ * accuracy (capped, so a poor fix cannot freeze a moving bus).
+ */
+public final class LocationIngest {
+
+    private final double minDistanceMeters;
+    private final double maxAccuracyMeters;
+
+    private final Map<String, BusIngest> buses = new ConcurrentHashMap<>();
+
+    public LocationIngest(double minDistanceMeters, double maxAccuracyMeters) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.maxAccuracyMeters = maxAccuracyMeters;
+    }
+
+    private static final class BusIngest {
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong emitted = new AtomicLong();
+        final AtomicLong suppressed = new AtomicLong();
+
+        // Guarded by this
+        DriverSession driver;
+        Position pending;
+        int pendingCount;
+        Position lastEmitted;
+    }
+
+    /**
+     * Outcome of one tick for a bus that received fixes: the position to
+     * publish, or null when the latest fix was suppressed as jitter.
+     */
+    public static final class Emission {
+        private final DriverSession driver;
+        private final Position position;
+        private final Position latest;
+        private final int coalesced;
+
+        Emission(DriverSession driver, Position position, Position latest, int coalesced) {
+            this.driver = driver;
+            this.position = position;
+            this.latest = latest;
+            this.coalesced = coalesced;
+        }
+
+        public DriverSession getDriver() {
+            return driver;
+        }
+
+        public Position getPosition() {
+            return position;
+        }
+
+        public Position getLatest() {
+            return latest;
+        }
+
+        // Number of fixes received for the bus during the tick
+        public int getCoalesced() {
+            return coalesced;
+        }
+    }
+
+    public void offer(DriverSession driver, Position position) {
+        BusIngest bus = buses.computeIfAbsent(driver.getBusId(), id -> new BusIngest());
+        bus.received.incrementAndGet();
+        synchronized (bus) {
+            if (bus.driver != driver) {
+                // A re-registered driver starts without a jitter baseline
+                bus.driver = driver;
+                bus.lastEmitted = null;
+            }
+            bus.pending = position;
+            bus.pendingCount++;
+        }
+    }
+
+    public List<Emission> drain() {
+        List<Emission> emissions = new ArrayList<>();
+        for (BusIngest bus : buses.values()) {
+            DriverSession driver;
+            Position latest;
+            int count;
+            Position publish = null;
+
+            synchronized (bus) {
+                if (bus.pending == null) continue;
+                driver = bus.driver;
+                latest = bus.pending;
+                count = bus.pendingCount;
+                bus.pending = null;
+                bus.pendingCount = 0;
+
+                if (bus.lastEmitted == null || !isJitter(bus.lastEmitted, latest)) {
+                    bus.lastEmitted = latest;
+                    publish = latest;
+                }
+            }
+
+            if (publish != null) {
+                bus.emitted.incrementAndGet();
+            } else {
+                bus.suppressed.incrementAndGet();
+            }
+            emissions.add(new Emission(driver, publish, latest, count));
+        }
+        return emissions;
+    }
+
+    // Drops any fix still pending for a driver that has gone away
+    public void discard(DriverSession driver) {
+        BusIngest bus = buses.get(driver.getBusId());
+        if (bus == null) return;
+        synchronized (bus) {
+            if (bus.driver == driver) {
+                bus.pending = null;
+                bus.pendingCount = 0;
+                bus.lastEmitted = null;
+            }
+        }
+    }
+
+    private boolean isJitter(Position last, Position next) {
+        double meters = DistanceCalculator.getDistanceFromLatLonInKm(
+                last.getLat(), last.getLng(), next.getLat(), next.getLng()) * 1000;
+        double threshold = Math.max(minDistanceMeters, Math.min(next.getAccuracy(), maxAccuracyMeters));
+        return meters < threshold;
+    }
+
+    public Map<String, Object> getStats() {
+        long received = 0;
+        long emitted = 0;
+        long suppressed = 0;
+        Map<String, Object> perBus = new TreeMap<>();
+        for (Map.Entry<String, BusIngest> entry : buses.entrySet()) {
+            BusIngest bus = entry.getValue();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("received", bus.received.get());
+            stats.put("emitted", bus.emitted.get());
+            stats.put("suppressed", bus.suppressed.get());
+            perBus.put(entry.getKey(), stats);
+
+            received += bus.received.get();
+            emitted += bus.emitted.get();
+            suppressed += bus.suppressed.get();
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("received", received);
+        stats.put("emitted", emitted);
+        stats.put("suppressed", suppressed);
+        stats.put("buses", perBus);
+        return stats;
+    }
+}
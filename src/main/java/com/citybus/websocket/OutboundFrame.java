@@ -0,0 +1,96 @@
+package com.citybus.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A server-to-client message encoded once into an immutable frame.
+ *
+ * The same frame instance is handed to every recipient of a broadcast, so the
+ * JSON serialization and the {@link TextMessage} allocation happen once per
+ * event rather than once per session.
+ *
+ * Location updates are marked droppable: a newer update for the same fleet
+ * supersedes them, so a backed-up session may discard them to make room.
+ * Every other frame is a control message and is always delivered.
+ *
+ * Binary frames keep only the encoded bytes: a container writes a binary
+ * payload by draining its ByteBuffer, so each send gets a fresh read view
+ * over the shared array instead of one buffer shared by every session.
+ *
+ * Frames carrying a driver fix also carry its server-stamped ingest time, so
+ * the send worker can measure driver-to-rider propagation on delivery.
+ */
+public final class OutboundFrame {
+
+    private static final Set<String> DROPPABLE_TYPES = Set.of(
+            "bus-location-update",
+            "driver-location-update"
+    );
+
+    private final String type;
+    private final TextMessage textMessage;
+    private final byte[] binaryPayload;
+    private final boolean droppable;
+    private final long ingestedAt;
+
+    private OutboundFrame(String type, TextMessage textMessage, byte[] binaryPayload, long ingestedAt) {
+        this.type = type;
+        this.textMessage = textMessage;
+        this.binaryPayload = binaryPayload;
+        this.droppable = DROPPABLE_TYPES.contains(type);
+        this.ingestedAt = ingestedAt;
+    }
+
+    public static OutboundFrame encode(ObjectMapper objectMapper, String type, Object data) throws JsonProcessingException {
+        Map<String, Object> envelope = new LinkedHashMap<>();
+        envelope.put("type", type);
+        envelope.put("data", data);
+        return new OutboundFrame(type, new TextMessage(objectMapper.writeValueAsBytes(envelope)), null, 0);
+    }
+
+    public static OutboundFrame binary(String type, byte[] payload) {
+        return new OutboundFrame(type, null, payload, 0);
+    }
+
+    // Same frame, tagged with the ingest time of the fix it carries
+    public OutboundFrame withIngestTime(long timestamp) {
+        return new OutboundFrame(type, textMessage, binaryPayload, timestamp);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public WebSocketMessage<?> getMessage() {
+        if (binaryPayload != null) {
+            return new BinaryMessage(ByteBuffer.wrap(binaryPayload));
+        }
+        return textMessage;
+    }
+
+    public boolean isBinary() {
+        return binaryPayload != null;
+    }
+
+    public boolean isDroppable() {
+        return droppable;
+    }
+
+    // Server time the carried fix was received, or 0 for frames that carry none
+    public long getIngestedAt() {
+        return ingestedAt;
+    }
+
+    public int getPayloadLength() {
+        return binaryPayload != null ? binaryPayload.length : textMessage.getPayloadLength();
+    }
+}
@@ -0,0 +1,245 @@
+package com.citybus.websocket;
+
+import com.citybus.service.TrackingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Send pipeline for a single WebSocket session.
+ *
+ * Frames are queued in a bounded buffer and written by a worker on the send
+ * executor, so callers never block on a slow client and at most one thread
+ * writes to the underlying session at a time.
+ *
+ * Overflow policy: once the buffer is full the oldest droppable frame
+ * (a location update) is evicted to make room. If there is nothing droppable
+ * left, a new location update is discarded, while control messages are still
+ * accepted up to a hard limit of four times the buffer size. A session that
+ * exceeds the hard limit, or whose current write has been blocked for longer
+ * than the send time limit, is closed as unreliable. A blocked write is only
+ * noticed here when another frame is offered, so the handler also runs a
+ * watchdog over all sessions; closing the underlying session is what aborts
+ * the write and frees the send thread.
+ */
+public final class OutboundSession {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundSession.class);
+    private static final int HARD_LIMIT_FACTOR = 4;
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final TrackingMetrics metrics;
+    private final int bufferSizeLimit;
+    private final long sendTimeLimitMs;
+    private final boolean binary;
+
+    private final Deque<OutboundFrame> buffer = new ArrayDeque<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile long sendStartTime;
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+
+    public OutboundSession(WebSocketSession session, Executor executor, TrackingMetrics metrics,
+                           int bufferSizeLimit, long sendTimeLimitMs) {
+        this.session = session;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.binary = BinaryLocationCodec.SUBPROTOCOL.equals(session.getAcceptedProtocol());
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    // True when the client negotiated the binary location subprotocol at connect time
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public boolean isOpen() {
+        return !closed.get() && session.isOpen();
+    }
+
+    public void send(OutboundFrame frame) {
+        if (!isOpen()) return;
+
+        if (isSendTimeLimitExceeded()) {
+            closeAsUnreliable("send time limit exceeded");
+            return;
+        }
+
+        synchronized (buffer) {
+            if (buffer.size() >= bufferSizeLimit && !evictOldestDroppable()) {
+                if (frame.isDroppable()) {
+                    frameDropped();
+                    return;
+                }
+                if (buffer.size() >= bufferSizeLimit * HARD_LIMIT_FACTOR) {
+                    frameDropped();
+                    closeAsUnreliable("buffer limit exceeded");
+                    return;
+                }
+            }
+            buffer.addLast(frame);
+        }
+
+        scheduleDrain();
+    }
+
+    // Caller must hold the buffer lock
+    private boolean evictOldestDroppable() {
+        Iterator<OutboundFrame> it = buffer.iterator();
+        while (it.hasNext()) {
+            if (it.next().isDroppable()) {
+                it.remove();
+                frameDropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void frameDropped() {
+        droppedFrames.incrementAndGet();
+        metrics.recordDroppedFrame();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RuntimeException e) {
+                draining.set(false);
+                log.warn("Failed to schedule send for session {}: {}", getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            OutboundFrame frame;
+            while (isOpen() && (frame = poll()) != null) {
+                sendStartTime = System.currentTimeMillis();
+                try {
+                    session.sendMessage(frame.getMessage());
+                    sentFrames.incrementAndGet();
+                    if (frame.getIngestedAt() > 0) {
+                        metrics.recordPropagation(frame.getIngestedAt(), System.currentTimeMillis());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    sendFailures.incrementAndGet();
+                    metrics.recordSendFailure();
+                    // Counted above; a dying connection fails every queued frame, so only log at debug
+                    log.debug("Failed to send {} to session {}: {}", frame.getType(), getId(), e.getMessage());
+                } finally {
+                    sendStartTime = 0;
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // A frame may have been queued after the last poll but before the flag was cleared
+        if (isOpen() && getQueueDepth() > 0) {
+            scheduleDrain();
+        }
+    }
+
+    private OutboundFrame poll() {
+        synchronized (buffer) {
+            return buffer.pollFirst();
+        }
+    }
+
+    public boolean isSendTimeLimitExceeded() {
+        long start = sendStartTime;
+        return start > 0 && System.currentTimeMillis() - start > sendTimeLimitMs;
+    }
+
+    public void closeAsUnreliable(String reason) {
+        if (!closed.compareAndSet(false, true)) return;
+
+        log.warn("Closing slow WebSocket session {}: {}", getId(), reason);
+        closeSession(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    // Stops sending and closes the WebSocket session with the given status
+    public void close(CloseStatus status) {
+        if (closed.compareAndSet(false, true)) {
+            closeSession(status);
+        }
+    }
+
+    // Stops sending; for sessions that are already closed
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            clear();
+        }
+    }
+
+    private void closeSession(CloseStatus status) {
+        clear();
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.warn("Failed to close session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    private void clear() {
+        synchronized (buffer) {
+            buffer.clear();
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getSendFailures() {
+        return sendFailures.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", getId());
+        stats.put("open", isOpen());
+        stats.put("binary", isBinary());
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("sentFrames", getSentFrames());
+        stats.put("droppedFrames", getDroppedFrames());
+        stats.put("sendFailures", getSendFailures());
+        return stats;
+    }
+}
@@ -0,0 +1,129 @@
+package com.citybus.websocket;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Index from subscription topic to the sessions interested in it.
+ *
+ * Topics are {@code all}, {@code route:<routeId>} and {@code bus:<busId>}.
+ * A location update for a bus is delivered to the union of the subscribers
+ * of {@code all}, its bus topic and its route topic, each session at most once.
+ *
+ * Optional callbacks report when a topic gets its first subscriber and loses
+ * its last, which is what a node needs to subscribe to on the fleet bus. They
+ * run inside the map update for that topic, so the calls for one topic never
+ * overtake each other; they must be quick and must not touch this index.
+ */
+public class SubscriptionIndex {
+
+    public static final String ALL = "all";
+    private static final String ROUTE_PREFIX = "route:";
+    private static final String BUS_PREFIX = "bus:";
+
+    private final Map<String, Set<String>> sessionsByTopic = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> topicsBySession = new ConcurrentHashMap<>();
+    private final Consumer<String> onTopicAdded;
+    private final Consumer<String> onTopicRemoved;
+
+    public SubscriptionIndex() {
+        this(topic -> { }, topic -> { });
+    }
+
+    public SubscriptionIndex(Consumer<String> onTopicAdded, Consumer<String> onTopicRemoved) {
+        this.onTopicAdded = onTopicAdded;
+        this.onTopicRemoved = onTopicRemoved;
+    }
+
+    public static String routeTopic(String routeId) {
+        return ROUTE_PREFIX + routeId;
+    }
+
+    public static String busTopic(String busId) {
+        return BUS_PREFIX + busId;
+    }
+
+    public static boolean isValidTopic(String topic) {
+        return ALL.equals(topic)
+                || (topic.startsWith(ROUTE_PREFIX) && topic.length() > ROUTE_PREFIX.length())
+                || (topic.startsWith(BUS_PREFIX) && topic.length() > BUS_PREFIX.length());
+    }
+
+    public void subscribe(String sessionId, String topic) {
+        sessionsByTopic.compute(topic, (key, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                onTopicAdded.accept(topic);
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        topicsBySession.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(topic);
+    }
+
+    public void unsubscribe(String sessionId, String topic) {
+        removeFromTopic(sessionId, topic);
+        Set<String> topics = topicsBySession.get(sessionId);
+        if (topics != null) {
+            topics.remove(topic);
+        }
+    }
+
+    public void unsubscribeAll(String sessionId) {
+        Set<String> topics = topicsBySession.remove(sessionId);
+        if (topics != null) {
+            for (String topic : topics) {
+                removeFromTopic(sessionId, topic);
+            }
+        }
+    }
+
+    private void removeFromTopic(String sessionId, String topic) {
+        sessionsByTopic.computeIfPresent(topic, (key, sessions) -> {
+            sessions.remove(sessionId);
+            if (!sessions.isEmpty()) {
+                return sessions;
+            }
+            onTopicRemoved.accept(topic);
+            return null;
+        });
+    }
+
+    public Set<String> getTopics(String sessionId) {
+        Set<String> topics = topicsBySession.get(sessionId);
+        return topics != null ? Collections.unmodifiableSet(topics) : Collections.emptySet();
+    }
+
+    public Set<String> getSubscribers(String topic) {
+        Set<String> sessions = sessionsByTopic.get(topic);
+        return sessions != null ? sessions : Collections.emptySet();
+    }
+
+    public int getTopicCount() {
+        return sessionsByTopic.size();
+    }
+
+    // Visit every session interested in an update for this bus, without building a merged set
+    public void forEachSubscriber(String busId, String routeId, Consumer<String> action) {
+        Set<String> all = getSubscribers(ALL);
+        Set<String> bus = busId != null ? getSubscribers(busTopic(busId)) : Collections.emptySet();
+        Set<String> route = routeId != null ? getSubscribers(routeTopic(routeId)) : Collections.emptySet();
+
+        for (String sessionId : all) {
+            action.accept(sessionId);
+        }
+        for (String sessionId : bus) {
+            if (!all.contains(sessionId)) {
+                action.accept(sessionId);
+            }
+        }
+        for (String sessionId : route) {
+            if (!all.contains(sessionId) && !bus.contains(sessionId)) {
+                action.accept(sessionId);
+            }
+        }
+    }
+}
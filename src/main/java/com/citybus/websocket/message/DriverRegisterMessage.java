@@ -0,0 +1,36 @@
+package com.citybus.websocket.message;
+
+/**
+ * Payload of {@code driver-register}. Identity normally comes from the
+ * handshake; the token is only for clients that could not authenticate it.
+ * A route (and trip) given here assigns the bus for the shift.
+ */
+public class DriverRegisterMessage {
+    private String token;
+    private String routeId;
+    private String tripId;
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public void setRouteId(String routeId) {
+        this.routeId = routeId;
+    }
+
+    public String getTripId() {
+        return tripId;
+    }
+
+    public void setTripId(String tripId) {
+        this.tripId = tripId;
+    }
+}
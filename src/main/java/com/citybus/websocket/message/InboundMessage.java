@@ -0,0 +1,24 @@
+package com.citybus.websocket.message;
+
+/**
+ * A parsed client message: its type and, for types that carry one, the
+ * payload bound to that type's message class (null when absent).
+ */
+public final class InboundMessage {
+    private final String type;
+    private final Object data;
+
+    public InboundMessage(String type, Object data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getData() {
+        return (T) data;
+    }
+}
@@ -0,0 +1,29 @@
+package com.citybus.websocket.message;
+
+/**
+ * Payload of {@code driver-location} and {@code user-location}.
+ */
+public class LocationMessage {
+    private double[] coords;
+    private double accuracy;
+
+    public double[] getCoords() {
+        return coords;
+    }
+
+    public void setCoords(double[] coords) {
+        this.coords = coords;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(double accuracy) {
+        this.accuracy = accuracy;
+    }
+
+    public boolean hasCoords() {
+        return coords != null && coords.length >= 2;
+    }
+}
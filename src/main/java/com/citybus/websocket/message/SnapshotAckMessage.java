@@ -0,0 +1,16 @@
+package com.citybus.websocket.message;
+
+/**
+ * Payload of {@code active-buses-ack}: the snapshot version a rider has applied.
+ */
+public class SnapshotAckMessage {
+    private long version = -1;
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
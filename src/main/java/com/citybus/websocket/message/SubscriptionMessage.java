@@ -0,0 +1,55 @@
+package com.citybus.websocket.message;
+
+import java.util.List;
+
+/**
+ * Payload of {@code subscribe} and {@code unsubscribe}. Any combination of
+ * fields may be given; each one names a topic.
+ */
+public class SubscriptionMessage {
+    private String topic;
+    private List<String> topics;
+    private String routeId;
+    private String busId;
+    private boolean all;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(List<String> topics) {
+        this.topics = topics;
+    }
+
+    public String getRouteId() {
+        return routeId;
+    }
+
+    public void setRouteId(String routeId) {
+        this.routeId = routeId;
+    }
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public void setBusId(String busId) {
+        this.busId = busId;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public void setAll(boolean all) {
+        this.all = all;
+    }
+}
@@ -0,0 +1,16 @@
+package com.citybus.websocket.message;
+
+/**
+ * Payload of {@code track-bus}.
+ */
+public class TrackBusMessage {
+    private String busId;
+
+    public String getBusId() {
+        return busId;
+    }
+
+    public void setBusId(String busId) {
+        this.busId = busId;
+    }
+}
@@ -0,0 +1,36 @@
+package com.citybus.websocket.message;
+
+import java.util.List;
+
+/**
+ * Payload of {@code user-register}.
+ */
+public class UserRegisterMessage {
+    private String userId;
+    private List<String> subscriptions;
+    private boolean snapshotDeltas;
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public List<String> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public void setSubscriptions(List<String> subscriptions) {
+        this.subscriptions = subscriptions;
+    }
+
+    public boolean isSnapshotDeltas() {
+        return snapshotDeltas;
+    }
+
+    public void setSnapshotDeltas(boolean snapshotDeltas) {
+        this.snapshotDeltas = snapshotDeltas;
+    }
+}
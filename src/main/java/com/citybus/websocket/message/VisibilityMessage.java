@@ -0,0 +1,16 @@
+package com.citybus.websocket.message;
+
+/**
+ * Payload of {@code driver-visibility}.
+ */
+public class VisibilityMessage {
+    private boolean visible = true;
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+}
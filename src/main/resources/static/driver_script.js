@@ -253,8 +253,6 @@ function handleVisibilityToggle(isVisible) {
         const message = {
             type: 'driver-visibility',
             data: {
-                driverId: currentUser?.username,
-                busId: currentUser?.busId,
                 visible: isVisible
             }
         };
@@ -395,12 +393,8 @@ function handleLocationUpdate(position) {
         const locationData = {
             type: 'driver-location',
             data: {
-                busId: currentUser.busId,
-                driverId: currentUser.username,
                 coords: [latitude, longitude],
-                accuracy: accuracy,
-                timestamp: Date.now(),
-                visible: document.getElementById('visibility-toggle')?.checked || true
+                accuracy: accuracy
             }
         };
 
@@ -416,7 +410,9 @@ function handleLocationUpdate(position) {
 // Connect to WebSocket
     function connectWebSocket() {
         const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
-        const wsUrl = `${protocol}//${window.location.host}/websocket`;
+        // The token authenticates the connection once; later messages carry no identity fields
+        const token = currentUser?.accessToken ? `?token=${encodeURIComponent(currentUser.accessToken)}` : '';
+        const wsUrl = `${protocol}//${window.location.host}/websocket${token}`;
 
     console.log('Connecting to WebSocket...');
 
@@ -432,8 +428,6 @@ function handleLocationUpdate(position) {
                 ws.send(JSON.stringify({
                     type: 'driver-register',
                     data: {
-                        driverId: currentUser.username,
-                        busId: currentUser.busId,
                         timestamp: Date.now()
                     }
                 }));
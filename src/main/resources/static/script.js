@@ -789,6 +789,7 @@ function updateBusCardStatus(busId, status, lastSeen) {
                 type: 'user-register',
                 data: {
                     userId: 'user_' + Math.random().toString(36).substr(2, 9),
+                    snapshotDeltas: true,
                     timestamp: Date.now()
                 }
             }));
@@ -830,6 +831,12 @@ function handleWebSocketMessage(message) {
             }
             break;
 
+        case 'active-buses-delta':
+            if (message.data) {
+                applyActiveBusesDelta(message.data);
+            }
+            break;
+
         case 'bus-location-update':
             if (message.data) {
                 updateSingleBusLocation(message.data);
@@ -850,6 +857,22 @@ function handleWebSocketMessage(message) {
             showNotification(`Now tracking ${message.data.busId}`);
             break;
 
+        case 'eta-update':
+            console.log('ETA update:', message.data);
+            break;
+
+        case 'proximity-alert':
+            showNotification(message.data.message);
+            break;
+
+        case 'bus-arrived':
+            showNotification(`${message.data.busId} arrived at ${message.data.stopName}`);
+            break;
+
+        case 'bus-departed':
+            console.log('Bus departed:', message.data);
+            break;
+
         default:
             console.log('Unknown message type:', message.type);
     }
@@ -869,6 +892,27 @@ function updateSingleBusLocation(busData) {
     }
 }
 
+// Apply a versioned active-buses update and acknowledge it so the next one only carries changes
+function applyActiveBusesDelta(delta) {
+    if (delta.full) {
+        const present = new Set(delta.updated.map(bus => bus.busId));
+        Object.keys(busMarkers).forEach(busId => {
+            if (!busMarkers[busId].isSimulated && !present.has(busId)) {
+                removeBusMarker(busId);
+            }
+        });
+    }
+    updateBusLocations(delta.updated);
+    delta.removed.forEach(removeBusMarker);
+
+    if (ws && ws.readyState === WebSocket.OPEN) {
+        ws.send(JSON.stringify({
+            type: 'active-buses-ack',
+            data: { version: delta.version }
+        }));
+    }
+}
+
 // Remove bus marker when driver disconnects
 function removeBusMarker(busId) {
     if (busMarkers[busId]) {
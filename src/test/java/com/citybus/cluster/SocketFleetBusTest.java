@@ -0,0 +1,139 @@
+package com.citybus.cluster;
+
+import com.citybus.websocket.SubscriptionIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two socket fleet bus nodes on loopback: a driver reporting to node A and a
+ * rider subscribed on node B, wired through a {@link SubscriptionIndex} the
+ * way the WebSocket handler does it.
+ */
+class SocketFleetBusTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private SocketFleetBus nodeA;
+    private SocketFleetBus nodeB;
+    private SubscriptionIndex ridersOnB;
+    private final BlockingQueue<FleetEvent> receivedOnB = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        nodeB = new SocketFleetBus("node-b", "127.0.0.1", 0, Collections.emptyList());
+        nodeB.setListener(receivedOnB::add);
+        ridersOnB = new SubscriptionIndex(nodeB::subscribe, nodeB::unsubscribe);
+
+        // Only A needs to reach B for A's events to flow to B
+        nodeA = new SocketFleetBus("node-a", "127.0.0.1", 0,
+                List.of(InetSocketAddress.createUnresolved("127.0.0.1", nodeB.getPort())));
+        waitFor(() -> isConnected(nodeA));
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void driverLocationOnOneNodeReachesRiderOnAnother() throws Exception {
+        ridersOnB.subscribe("rider-1", SubscriptionIndex.routeTopic("1"));
+        waitFor(() -> peerTopicCount(nodeA) == 1);
+
+        nodeA.publish(location("bus-1", "1", 18.52, 73.85));
+
+        FleetEvent event = receivedOnB.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        assertEquals(FleetEvent.LOCATION, event.getType());
+        assertEquals("node-a", event.getOrigin());
+        assertEquals("bus-1", event.getBusId());
+        assertEquals(18.52, event.getCoords()[0], 1e-9);
+        assertEquals(73.85, event.getCoords()[1], 1e-9);
+    }
+
+    @Test
+    void eventsForOtherRoutesAreNotSent() throws Exception {
+        ridersOnB.subscribe("rider-1", SubscriptionIndex.routeTopic("1"));
+        waitFor(() -> peerTopicCount(nodeA) == 1);
+
+        nodeA.publish(location("bus-2", "2", 18.50, 73.80));
+        nodeA.publish(location("bus-1", "1", 18.52, 73.85));
+
+        // Events on one link arrive in order, so anything for route 2 would come first
+        FleetEvent event = receivedOnB.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        assertEquals("bus-1", event.getBusId());
+    }
+
+    @Test
+    void unsubscribeStopsDelivery() throws Exception {
+        ridersOnB.subscribe("rider-1", SubscriptionIndex.routeTopic("1"));
+        waitFor(() -> peerTopicCount(nodeA) == 1);
+
+        ridersOnB.unsubscribeAll("rider-1");
+        waitFor(() -> peerTopicCount(nodeA) == 0);
+
+        nodeA.publish(location("bus-1", "1", 18.52, 73.85));
+
+        assertNull(receivedOnB.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0L, nodeB.getStats().get("received"));
+    }
+
+    @Test
+    void subscriptionsMadeBeforeThePeerConnectsAreSentOnConnect() throws Exception {
+        nodeA.close();
+        ridersOnB.subscribe("rider-1", SubscriptionIndex.busTopic("bus-7"));
+
+        nodeA = new SocketFleetBus("node-a", "127.0.0.1", 0,
+                List.of(InetSocketAddress.createUnresolved("127.0.0.1", nodeB.getPort())));
+        waitFor(() -> peerTopicCount(nodeA) == 1);
+
+        nodeA.publish(location("bus-7", "3", 18.53, 73.86));
+
+        FleetEvent event = receivedOnB.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        assertEquals("bus-7", event.getBusId());
+    }
+
+    private static FleetEvent location(String busId, String routeId, double lat, double lng) {
+        Map<String, Object> data = Map.of("busId", busId, "routeId", routeId, "coords", new double[] { lat, lng });
+        return new FleetEvent(FleetEvent.LOCATION, "node-a", busId, routeId, data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> peer(SocketFleetBus bus) {
+        return ((List<Map<String, Object>>) bus.getStats().get("peers")).get(0);
+    }
+
+    private static boolean isConnected(SocketFleetBus bus) {
+        return (Boolean) peer(bus).get("connected");
+    }
+
+    private static int peerTopicCount(SocketFleetBus bus) {
+        return (Integer) peer(bus).get("topics");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for the cluster link");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.citybus.service;
+
+import com.citybus.model.Route;
+import com.citybus.model.Stop;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GtfsRouteLoaderTest {
+
+    @TempDir
+    Path feed;
+
+    @Test
+    void buildsOneRoutePerGtfsRoute() throws IOException {
+        writeFeed();
+
+        Map<String, Route> routes = GtfsRouteLoader.load(feed);
+
+        assertEquals(List.of("A", "B"), List.copyOf(routes.keySet()));
+        assertEquals("Station - Airport", routes.get("A").getName());
+        // No long name: the short name is used
+        assertEquals("2", routes.get("B").getName());
+    }
+
+    @Test
+    void usesTheOutboundTripWithAShapeInSequenceOrder() throws IOException {
+        writeFeed();
+
+        Route route = GtfsRouteLoader.load(feed).get("A");
+
+        List<double[]> path = route.getPath();
+        assertEquals(3, path.size());
+        assertArrayEquals(new double[] { 18.51, 73.84 }, path.get(0));
+        assertArrayEquals(new double[] { 18.52, 73.85 }, path.get(1));
+        assertArrayEquals(new double[] { 18.53, 73.86 }, path.get(2));
+
+        List<Stop> stops = route.getStops();
+        assertEquals(2, stops.size());
+        assertEquals("Central, Platform 1", stops.get(0).getName());
+        assertEquals("Market", stops.get(1).getName());
+        assertArrayEquals(new double[] { 18.51, 73.84 }, stops.get(0).getCoords());
+    }
+
+    @Test
+    void routeWithoutAShapeRunsStraightBetweenItsStops() throws IOException {
+        writeFeed();
+
+        Map<String, Route> routes = GtfsRouteLoader.load(feed);
+        Route route = routes.get("B");
+
+        assertEquals(2, route.getPath().size());
+        assertArrayEquals(new double[] { 18.52, 73.85 }, route.getPath().get(0));
+        assertArrayEquals(new double[] { 18.54, 73.87 }, route.getPath().get(1));
+        // Stops shared between routes are one object
+        assertSame(routes.get("A").getStops().get(1), route.getStops().get(0));
+    }
+
+    @Test
+    void routeWithFewerThanTwoPointsIsLeftOut() throws IOException {
+        writeFeed();
+        write("trips.txt",
+                "route_id,service_id,trip_id,direction_id,shape_id",
+                "A,wk,A-out,0,SH-out",
+                "C,wk,C-out,0,");
+        write("stop_times.txt",
+                "trip_id,arrival_time,departure_time,stop_id,stop_sequence",
+                "A-out,08:00:00,08:00:00,S1,1",
+                "C-out,08:00:00,08:00:00,S3,1");
+
+        Map<String, Route> routes = GtfsRouteLoader.load(feed);
+
+        assertFalse(routes.containsKey("C"));
+        assertEquals(1, routes.size());
+    }
+
+    @Test
+    void missingRequiredColumnFails() throws IOException {
+        writeFeed();
+        write("stops.txt", "stop_id,stop_name,stop_lat", "S1,Central,18.51");
+
+        assertThrows(IOException.class, () -> GtfsRouteLoader.load(feed));
+    }
+
+    private void writeFeed() throws IOException {
+        // Byte order mark, as many exporters write it
+        write("routes.txt",
+                "\uFEFFroute_id,route_short_name,route_long_name",
+                "A,1,Station - Airport",
+                "B,2,");
+        write("trips.txt",
+                "route_id,service_id,trip_id,direction_id,shape_id",
+                "A,wk,A-back,1,SH-back",
+                "A,wk,A-out,0,SH-out",
+                "B,wk,B-out,0,");
+        write("shapes.txt",
+                "shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence",
+                "SH-out,18.52,73.85,2",
+                "SH-back,18.60,73.90,1",
+                "SH-out,18.51,73.84,1",
+                "SH-back,18.61,73.91,2",
+                "SH-out,18.53,73.86,3");
+        write("stop_times.txt",
+                "trip_id,arrival_time,departure_time,stop_id,stop_sequence",
+                "A-out,08:05:00,08:05:00,S2,2",
+                "A-out,08:00:00,08:00:00,S1,1",
+                "A-back,09:00:00,09:00:00,S9,1",
+                "B-out,08:00:00,08:00:00,S2,1",
+                "B-out,08:10:00,08:10:00,S3,2");
+        write("stops.txt",
+                "stop_id,stop_name,stop_lat,stop_lon",
+                "S1,\"Central, Platform 1\",18.51,73.84",
+                "S2,Market,18.52,73.85",
+                "S3,Depot,18.54,73.87",
+                "S9,Terminus,18.60,73.90");
+    }
+
+    private void write(String name, String... lines) throws IOException {
+        Files.write(feed.resolve(name), List.of(lines), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,73 @@
+package com.citybus.service;
+
+import com.citybus.model.Position;
+import com.citybus.model.RiderSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProximityIndexTest {
+
+    private final ProximityIndex index = new ProximityIndex(0.5, 0.75);
+
+    @Test
+    void alertsOnceForANearbyRiderAndRearmsAfterTheBusLeaves() {
+        addRider("s1", "bus-1", 18.5204, 73.8567);
+
+        assertEquals(1, index.onBusLocation("bus-1", 18.5230, 73.8567).size());
+        assertTrue(index.onBusLocation("bus-1", 18.5220, 73.8567).isEmpty());
+
+        // Beyond the 0.75 km re-arm radius, then back
+        assertTrue(index.onBusLocation("bus-1", 18.5350, 73.8567).isEmpty());
+        assertEquals(1, index.onBusLocation("bus-1", 18.5230, 73.8567).size());
+    }
+
+    @Test
+    void ignoresRidersTrackingAnotherBus() {
+        addRider("s1", "bus-2", 18.5204, 73.8567);
+
+        assertTrue(index.onBusLocation("bus-1", 18.5204, 73.8567).isEmpty());
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    void busAtAPoleFindsRidersAtAnyLongitude() {
+        addRider("north", "bus-1", 89.999, -120);
+        addRider("south", "bus-2", -89.999, 45);
+
+        List<Map<String, Object>> north = index.onBusLocation("bus-1", 90, 0);
+        List<Map<String, Object>> south = index.onBusLocation("bus-2", -90, 180);
+
+        assertEquals(1, north.size());
+        assertEquals("north", north.get(0).get("sessionId"));
+        assertEquals(1, south.size());
+        assertEquals("south", south.get(0).get("sessionId"));
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    void busOnTheAntimeridianStaysInsideTheGrid() {
+        addRider("east", "bus-1", 0, 179.999);
+        addRider("west", "bus-2", 0, -179.999);
+
+        List<Map<String, Object>> east = index.onBusLocation("bus-1", 0, 180);
+        List<Map<String, Object>> west = index.onBusLocation("bus-2", 0, -180);
+
+        assertEquals(1, east.size());
+        assertEquals(1, west.size());
+    }
+
+    private void addRider(String sessionId, String busId, double lat, double lng) {
+        RiderSession rider = new RiderSession(sessionId, "user-" + sessionId, 0);
+        rider.setTrackingBusId(busId);
+        rider.updatePosition(new Position(lat, lng, 5, 0));
+        index.addRider(rider);
+        index.updateRiderLocation(sessionId);
+    }
+}
@@ -0,0 +1,180 @@
+package com.citybus.service;
+
+import com.citybus.model.Position;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackLogTest {
+
+    // Header layout from TrackLog: magic at 0, committed record count at 16
+    private static final int COUNT_OFFSET = 16;
+
+    @TempDir
+    Path directory;
+
+    private TrackLog trackLog;
+    private final long base = System.currentTimeMillis() - 60_000;
+
+    @AfterEach
+    void tearDown() {
+        if (trackLog != null) {
+            trackLog.close();
+        }
+    }
+
+    @Test
+    void historyReturnsFlushedFixesForOneBusInOrder() {
+        trackLog = open();
+        for (int i = 0; i < 10; i++) {
+            trackLog.append("bus-1", fix(i));
+            trackLog.append("bus-2", new Position(19.0, 72.8, 3, base + i * 1000));
+        }
+        trackLog.flush();
+
+        List<Position> history = trackLog.history("bus-1", base, base + 60_000, 100);
+        assertEquals(10, history.size());
+        for (int i = 0; i < 10; i++) {
+            assertFix(fix(i), history.get(i));
+        }
+
+        assertEquals(3, trackLog.history("bus-1", base + 2000, base + 4000, 100).size());
+        assertEquals(4, trackLog.history("bus-1", base, base + 60_000, 4).size());
+        assertTrue(trackLog.history("bus-3", base, base + 60_000, 100).isEmpty());
+    }
+
+    @Test
+    void fixesWaitingInTheBufferAreNotInHistory() {
+        trackLog = open();
+        trackLog.append("bus-1", fix(0));
+
+        assertTrue(trackLog.history("bus-1", base, base + 60_000, 100).isEmpty());
+        trackLog.flush();
+        assertEquals(1, trackLog.history("bus-1", base, base + 60_000, 100).size());
+    }
+
+    @Test
+    void historySurvivesAReopen() {
+        trackLog = open();
+        for (int i = 0; i < 100; i++) {
+            trackLog.append(i % 2 == 0 ? "bus-1" : "bus-2", fix(i));
+        }
+        trackLog.close();
+
+        trackLog = open();
+        List<Position> history = trackLog.history("bus-2", base, base + 600_000, 1000);
+        assertEquals(50, history.size());
+        for (int i = 0; i < 50; i++) {
+            assertFix(fix(2 * i + 1), history.get(i));
+        }
+
+        // New fixes go after the recovered ones, under the same bus ids
+        trackLog.append("bus-2", fix(100));
+        trackLog.flush();
+        List<Position> extended = trackLog.history("bus-2", base, base + 600_000, 1000);
+        assertEquals(51, extended.size());
+        assertFix(fix(100), extended.get(50));
+    }
+
+    @Test
+    void recordsPastTheCommittedCountAreDiscardedOnRecovery() throws IOException {
+        trackLog = open();
+        for (int i = 0; i < 10; i++) {
+            trackLog.append("bus-1", fix(i));
+        }
+        trackLog.close();
+        trackLog = null;
+
+        // A crash after writing records 6..9 but before committing their count
+        writeCommittedCount(segmentFile(), 6);
+
+        trackLog = open();
+        List<Position> recovered = trackLog.history("bus-1", base, base + 60_000, 100);
+        assertEquals(6, recovered.size());
+        assertFix(fix(5), recovered.get(5));
+
+        // The next fix takes the first uncommitted slot
+        trackLog.append("bus-1", fix(20));
+        trackLog.flush();
+        List<Position> history = trackLog.history("bus-1", base, base + 60_000, 100);
+        assertEquals(7, history.size());
+        assertFix(fix(20), history.get(6));
+    }
+
+    @Test
+    void unreadableSegmentIsSkipped() throws IOException {
+        trackLog = open();
+        trackLog.append("bus-1", fix(0));
+        trackLog.close();
+        trackLog = null;
+
+        writeCommittedCount(segmentFile(), Long.MAX_VALUE);
+
+        trackLog = open();
+        assertTrue(trackLog.history("bus-1", base, base + 60_000, 100).isEmpty());
+
+        // New fixes go to a fresh segment next to the unreadable one, which is left for inspection
+        assertTrue(trackLog.append("bus-1", fix(1)));
+        trackLog.flush();
+        List<Position> history = trackLog.history("bus-1", base, base + 60_000, 100);
+        assertEquals(1, history.size());
+        assertFix(fix(1), history.get(0));
+    }
+
+    @Test
+    void disabledLogAcceptsNothing() {
+        trackLog = new TrackLog(false, directory.toString(), 1024, 1024, 4, 7);
+        trackLog.open();
+
+        assertFalse(trackLog.append("bus-1", fix(0)));
+        trackLog.flush();
+        assertTrue(trackLog.history("bus-1", base, base + 60_000, 100).isEmpty());
+    }
+
+    private TrackLog open() {
+        TrackLog log = new TrackLog(true, directory.toString(), 1024, 1024, 4, 7);
+        log.open();
+        return log;
+    }
+
+    private Position fix(int i) {
+        return new Position(18.5 + i * 1e-4, 73.8 + i * 1e-4, 5 + i % 7, base + i * 1000);
+    }
+
+    private static void assertFix(Position expected, Position actual) {
+        assertEquals(expected.getLat(), actual.getLat(), 0);
+        assertEquals(expected.getLng(), actual.getLng(), 0);
+        assertEquals(expected.getAccuracy(), actual.getAccuracy(), 1e-6);
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+
+    private Path segmentFile() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(file -> file.getFileName().toString().endsWith(".seg"))
+                    .collect(Collectors.toList());
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private static void writeCommittedCount(Path segment, long count) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, count);
+            channel.write(value, COUNT_OFFSET);
+        }
+    }
+}
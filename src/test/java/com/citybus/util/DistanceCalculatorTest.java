@@ -0,0 +1,116 @@
+package com.citybus.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DistanceCalculatorTest {
+
+    private static final double KM_PER_DEGREE = 6371.0 * Math.PI / 180;
+
+    @Test
+    void haversineMatchesKnownDistances() {
+        assertEquals(0, DistanceCalculator.getDistanceFromLatLonInKm(18.52, 73.85, 18.52, 73.85), 0);
+        // One degree of latitude, and one of longitude on the equator
+        assertEquals(KM_PER_DEGREE, DistanceCalculator.getDistanceFromLatLonInKm(10, 20, 11, 20), 1e-9);
+        assertEquals(KM_PER_DEGREE, DistanceCalculator.getDistanceFromLatLonInKm(0, 20, 0, 21), 1e-9);
+        // Pune to Mumbai, about 120 km
+        assertEquals(120, DistanceCalculator.getDistanceFromLatLonInKm(18.5204, 73.8567, 19.0760, 72.8777), 2);
+    }
+
+    @Test
+    void radiusAgreesWithHaversineNearTheBoundary() {
+        Random random = new Random(42);
+        double[] latitudes = { 0, 18.52, -33.87, 51.5, 64.1, -78.0, 85.0 };
+        double[] radii = { 0.03, 0.5, 0.75, 5, 50 };
+        int mismatches = 0;
+        int inside = 0;
+        int samples = 0;
+
+        for (double centerLat : latitudes) {
+            for (double radiusKm : radii) {
+                double centerLng = random.nextDouble() * 340 - 170;
+                DistanceCalculator.Radius radius = new DistanceCalculator.Radius(centerLat, centerLng, radiusKm);
+                for (int i = 0; i < 10_000; i++) {
+                    // Mostly within 1% of the radius, where the approximation alone would be wrong
+                    double scale = i % 4 == 0 ? random.nextDouble() * 2 : 0.99 + random.nextDouble() * 0.02;
+                    double[] point = destination(centerLat, centerLng, random.nextDouble() * 2 * Math.PI, radiusKm * scale);
+
+                    boolean exact = DistanceCalculator.getDistanceFromLatLonInKm(centerLat, centerLng, point[0], point[1]) <= radiusKm;
+                    if (radius.contains(point[0], point[1]) != exact) {
+                        mismatches++;
+                    }
+                    if (exact) {
+                        inside++;
+                    }
+                    samples++;
+                }
+            }
+        }
+
+        assertEquals(0, mismatches);
+        // Both sides of the boundary were exercised
+        assertTrue(inside > samples / 4 && inside < samples * 3 / 4);
+    }
+
+    @Test
+    void isWithinKmIncludesTheBoundaryAndRejectsFarPoints() {
+        assertTrue(DistanceCalculator.isWithinKm(18.52, 73.85, 18.52, 73.85, 0));
+        assertTrue(DistanceCalculator.isWithinKm(10, 20, 11, 20, KM_PER_DEGREE + 1e-9));
+        assertFalse(DistanceCalculator.isWithinKm(10, 20, 11, 20, KM_PER_DEGREE - 1e-6));
+        assertFalse(DistanceCalculator.isWithinKm(18.52, 73.85, -18.52, -106.15, 100));
+    }
+
+    @Test
+    void withinKmReturnsMatchingIndexesInOrder() {
+        Random random = new Random(7);
+        int count = 2000;
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = 18.52 + (random.nextDouble() - 0.5) * 0.02;
+            lngs[i] = 73.85 + (random.nextDouble() - 0.5) * 0.02;
+        }
+
+        int[] hits = new int[count];
+        int found = DistanceCalculator.withinKm(18.52, 73.85, lats, lngs, count, 0.5, hits);
+
+        int expected = 0;
+        for (int i = 0; i < count; i++) {
+            if (DistanceCalculator.getDistanceFromLatLonInKm(18.52, 73.85, lats[i], lngs[i]) <= 0.5) {
+                assertEquals(i, hits[expected++]);
+            }
+        }
+        assertEquals(expected, found);
+        assertTrue(found > 0 && found < count);
+    }
+
+    @Test
+    void approximateDistancesStayWithinTheDocumentedBound() {
+        double[] lats = { 18.5204, 18.5250, 18.5150, 18.5204 };
+        double[] lngs = { 73.8567, 73.8600, 73.8500, 73.8610 };
+        double[] out = new double[lats.length];
+        DistanceCalculator.approximateDistancesKm(18.5204, 73.8567, lats, lngs, lats.length, out);
+
+        for (int i = 0; i < lats.length; i++) {
+            double exact = DistanceCalculator.getDistanceFromLatLonInKm(18.5204, 73.8567, lats[i], lngs[i]);
+            assertEquals(exact, out[i], exact * 3e-5 + 1e-12);
+            assertEquals(DistanceCalculator.getApproximateDistanceInKm(18.5204, 73.8567, lats[i], lngs[i]), out[i], 1e-12);
+        }
+    }
+
+    // Point at a great-circle distance and bearing from a start point
+    private static double[] destination(double lat, double lng, double bearing, double distanceKm) {
+        double angle = distanceKm / 6371.0;
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lng);
+        double phi2 = Math.asin(Math.sin(phi) * Math.cos(angle) + Math.cos(phi) * Math.sin(angle) * Math.cos(bearing));
+        double lambda2 = lambda + Math.atan2(Math.sin(bearing) * Math.sin(angle) * Math.cos(phi),
+                Math.cos(angle) - Math.sin(phi) * Math.sin(phi2));
+        return new double[] { Math.toDegrees(phi2), Math.toDegrees(lambda2) };
+    }
+}
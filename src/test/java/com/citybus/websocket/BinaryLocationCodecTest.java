@@ -0,0 +1,81 @@
+package com.citybus.websocket;
+
+import com.citybus.model.Position;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryLocationCodecTest {
+
+    @Test
+    void encodesTheDocumentedLayout() {
+        byte[] frame = BinaryLocationCodec.encode(42, new Position(18.5204303, 73.8567437, 12.3, 1_700_000_000_123L));
+
+        assertEquals(BinaryLocationCodec.FRAME_LENGTH, frame.length);
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        assertEquals(BinaryLocationCodec.LOCATION_FRAME, buffer.get(0));
+        assertEquals(42, buffer.getInt(1));
+        assertEquals(185204303, buffer.getInt(5));
+        assertEquals(738567437, buffer.getInt(9));
+        assertEquals(1_700_000_000_123L, buffer.getLong(13));
+        assertEquals(123, buffer.getShort(21));
+    }
+
+    @Test
+    void roundTripKeepsPositionToFixedPointPrecision() {
+        double[][] points = { { 18.5204303, 73.8567437 }, { -33.8688197, 151.2092955 }, { 64.1466, -21.9426 },
+                { 0, 0 }, { -89.9999999, -179.9999999 }, { 89.9999999, 179.9999999 } };
+        for (double[] point : points) {
+            byte[] frame = BinaryLocationCodec.encode(7, new Position(point[0], point[1], 4.5, 1000));
+            Position decoded = BinaryLocationCodec.decodePosition(ByteBuffer.wrap(frame), 2000);
+
+            assertEquals(point[0], decoded.getLat(), 0.5e-7);
+            assertEquals(point[1], decoded.getLng(), 0.5e-7);
+            assertEquals(4.5, decoded.getAccuracy(), 0);
+            // Inbound fixes are stamped with the server receive time, as on the JSON path
+            assertEquals(2000, decoded.getTimestamp());
+        }
+    }
+
+    @Test
+    void accuracyIsRoundedToDecimetresAndSaturates() {
+        assertEquals(0.1, decodedAccuracy(0.06), 1e-9);
+        assertEquals(0.0, decodedAccuracy(-3), 0);
+        assertEquals(6553.5, decodedAccuracy(6553.5), 1e-9);
+        assertEquals(6553.5, decodedAccuracy(1_000_000), 1e-9);
+    }
+
+    @Test
+    void decodesAtTheBufferPositionWithoutMovingIt() {
+        byte[] frame = BinaryLocationCodec.encode(1, new Position(18.52, 73.85, 5, 1000));
+        ByteBuffer buffer = ByteBuffer.allocate(5 + frame.length);
+        buffer.position(5);
+        buffer.put(frame);
+        buffer.position(5);
+
+        assertTrue(BinaryLocationCodec.isLocationFrame(buffer));
+        Position decoded = BinaryLocationCodec.decodePosition(buffer, 1000);
+        assertEquals(18.52, decoded.getLat(), 1e-7);
+        assertEquals(73.85, decoded.getLng(), 1e-7);
+        assertEquals(5, buffer.position());
+    }
+
+    @Test
+    void recognisesOnlyWholeLocationFrames() {
+        byte[] frame = BinaryLocationCodec.encode(1, new Position(18.52, 73.85, 5, 1000));
+        assertTrue(BinaryLocationCodec.isLocationFrame(ByteBuffer.wrap(frame)));
+
+        assertFalse(BinaryLocationCodec.isLocationFrame(ByteBuffer.wrap(frame, 0, frame.length - 1)));
+        frame[0] = 0x02;
+        assertFalse(BinaryLocationCodec.isLocationFrame(ByteBuffer.wrap(frame)));
+    }
+
+    private static double decodedAccuracy(double accuracy) {
+        byte[] frame = BinaryLocationCodec.encode(0, new Position(0, 0, accuracy, 0));
+        return BinaryLocationCodec.decodePosition(ByteBuffer.wrap(frame), 0).getAccuracy();
+    }
+}
@@ -0,0 +1,233 @@
+package com.citybus.websocket;
+
+import com.citybus.cluster.FleetBus;
+import com.citybus.cluster.InMemoryFleetBus;
+import com.citybus.model.AuthPrincipal;
+import com.citybus.model.DriverSession;
+import com.citybus.model.Position;
+import com.citybus.service.AssignmentRegistry;
+import com.citybus.service.AuthService;
+import com.citybus.service.BusTrackingService;
+import com.citybus.service.EtaService;
+import com.citybus.service.FleetRegistry;
+import com.citybus.service.GeofenceService;
+import com.citybus.service.RouteStore;
+import com.citybus.service.StopEventLog;
+import com.citybus.service.TrackLog;
+import com.citybus.service.TrackingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The handler wired to its real services without a Spring context; sends run
+ * inline and end in {@link RecordingSession}s.
+ */
+class BusTrackingWebSocketHandlerTest {
+
+    // A point on route 1 of the bundled routes.json
+    private static final double[] ROUTE_1_POINT = { 19.840466, 75.232433 };
+
+    private final AuthService authService = new AuthService();
+    private final FleetRegistry fleetRegistry = new FleetRegistry();
+    private BusTrackingService busTrackingService;
+    private BusTrackingWebSocketHandler handler;
+    private int nextSessionId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        busTrackingService = newTrackingService(fleetRegistry);
+        handler = newHandler(busTrackingService, new InMemoryFleetBus("test", new InMemoryFleetBus.Hub()));
+    }
+
+    @Test
+    void acceptsAFixOnTheRoute() throws Exception {
+        RecordingSession driver = connectDriver("driver1", "bus-1");
+
+        handler.handleMessage(driver, location("driver-location", ROUTE_1_POINT[0], ROUTE_1_POINT[1]));
+        handler.flushLocationIngest();
+
+        assertFalse(driver.hasSent("Coordinates out of range"));
+        assertNotNull(busTrackingService.getBusLocation("bus-1"));
+    }
+
+    @Test
+    void rejectsNonNumericDriverCoordinates() throws Exception {
+        RecordingSession driver = connectDriver("driver1", "bus-1");
+
+        handler.handleMessage(driver, new TextMessage(
+                "{\"type\":\"driver-location\",\"data\":{\"coords\":[\"NaN\",\"NaN\"],\"accuracy\":5}}"));
+        handler.handleMessage(driver, new TextMessage(
+                "{\"type\":\"driver-location\",\"data\":{\"coords\":[\"Infinity\",75.2],\"accuracy\":5}}"));
+        handler.flushLocationIngest();
+
+        assertTrue(driver.hasSent("Coordinates out of range"));
+        assertNull(busTrackingService.getBusLocation("bus-1"));
+    }
+
+    @Test
+    void rejectsDriverFixesAtThePolesAndPastTheAntimeridian() throws Exception {
+        RecordingSession driver = connectDriver("driver1", "bus-1");
+
+        handler.handleMessage(driver, location("driver-location", 90, 0));
+        handler.handleMessage(driver, location("driver-location", -90, 0));
+        handler.handleMessage(driver, location("driver-location", 19.84, 180.5));
+        handler.flushLocationIngest();
+
+        assertTrue(driver.hasSent("Coordinates out of range"));
+        assertNull(busTrackingService.getBusLocation("bus-1"));
+    }
+
+    @Test
+    void rejectsBinaryFixesAtThePole() throws Exception {
+        RecordingSession driver = connectDriver("driver1", "bus-1");
+
+        byte[] frame = BinaryLocationCodec.encode(0, new Position(90, 0, 5, 0));
+        handler.handleMessage(driver, new BinaryMessage(frame));
+        handler.flushLocationIngest();
+
+        assertTrue(driver.hasSent("Coordinates out of range"));
+        assertNull(busTrackingService.getBusLocation("bus-1"));
+    }
+
+    @Test
+    void rejectsInvalidRiderLocations() throws Exception {
+        RecordingSession rider = connectRider("rider1");
+
+        handler.handleMessage(rider, new TextMessage(
+                "{\"type\":\"user-location\",\"data\":{\"coords\":[\"NaN\",73.85]}}"));
+        handler.handleMessage(rider, location("user-location", 90, 73.85));
+
+        assertTrue(rider.hasSent("Coordinates out of range"));
+        assertNull(fleetRegistry.getRiderBySession(rider.getId()).getPosition());
+    }
+
+    @Test
+    void riderThatOnlyAcksSnapshotsSurvivesTheSweep() throws Exception {
+        RecordingSession rider = connectRider("rider1");
+        idleSince(rider, 3 * 60 * 1000);
+
+        handler.handleMessage(rider, new TextMessage("{\"type\":\"active-buses-ack\",\"data\":{\"version\":0}}"));
+        handler.cleanupInactiveSessions();
+
+        assertNotNull(fleetRegistry.getRiderBySession(rider.getId()));
+        assertNull(rider.getCloseStatus());
+    }
+
+    @Test
+    void silentRiderIsClosedByTheSweep() throws Exception {
+        RecordingSession rider = connectRider("rider1");
+        idleSince(rider, 3 * 60 * 1000);
+
+        handler.cleanupInactiveSessions();
+
+        assertNull(fleetRegistry.getRiderBySession(rider.getId()));
+        assertEquals(CloseStatus.GOING_AWAY, rider.getCloseStatus());
+    }
+
+    @Test
+    void heartbeatsKeepAParkedRemoteDriverAlive() throws Exception {
+        InMemoryFleetBus.Hub hub = new InMemoryFleetBus.Hub();
+        InMemoryFleetBus busA = new InMemoryFleetBus("node-a", hub);
+        InMemoryFleetBus busB = new InMemoryFleetBus("node-b", hub);
+        try {
+            handler = newHandler(busTrackingService, busA);
+            FleetRegistry remoteRegistry = new FleetRegistry();
+            BusTrackingWebSocketHandler remoteHandler = newHandler(newTrackingService(remoteRegistry), busB);
+
+            connectDriver("driver1", "bus-1");
+            DriverSession remote = await(() -> remoteRegistry.getDriver("driver1"));
+            long idleSince = System.currentTimeMillis() - 3 * 60 * 1000;
+            remote.touch(idleSince);
+
+            handler.publishDriverHeartbeats();
+            await(() -> remote.getLastSeen() > idleSince ? remote : null);
+            remoteHandler.cleanupInactiveSessions();
+
+            assertSame(remote, remoteRegistry.getDriver("driver1"));
+        } finally {
+            busA.close();
+            busB.close();
+        }
+    }
+
+    // Fleet events are delivered on the bus's own thread
+    private static <T> T await(Supplier<T> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        T value;
+        while ((value = condition.get()) == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for a fleet event");
+            Thread.sleep(10);
+        }
+        return value;
+    }
+
+    private void idleSince(RecordingSession session, long idleMs) {
+        fleetRegistry.getRiderBySession(session.getId()).touch(System.currentTimeMillis() - idleMs);
+    }
+
+    private static BusTrackingService newTrackingService(FleetRegistry registry) throws Exception {
+        RouteStore routeStore = new RouteStore("classpath:routes/routes.json", new DefaultResourceLoader(), event -> { });
+        routeStore.load();
+        BusTrackingService service = new BusTrackingService(registry, routeStore, new AssignmentRegistry(routeStore, "bus-1:1"));
+        service.initRoutes();
+        return service;
+    }
+
+    private BusTrackingWebSocketHandler newHandler(BusTrackingService service, FleetBus fleetBus) {
+        BusTrackingWebSocketHandler newHandler = new BusTrackingWebSocketHandler(
+                service,
+                authService,
+                new EtaService(service),
+                new GeofenceService(service, 30, 45),
+                new TrackLog(false, "", 0, 0, 0, 0),
+                new StopEventLog(false, "", 0),
+                new TrackingMetrics(new SimpleMeterRegistry(), service.getFleetRegistry()),
+                fleetBus,
+                Runnable::run,
+                64, 10_000, 30,
+                0, 25, false,
+                600, 100);
+        newHandler.joinFleetBus();
+        return newHandler;
+    }
+
+    private RecordingSession connect() throws Exception {
+        RecordingSession session = new RecordingSession("s" + nextSessionId++);
+        handler.afterConnectionEstablished(session);
+        return session;
+    }
+
+    // A connected, registered driver whose handshake carried a valid token
+    private RecordingSession connectDriver(String username, String busId) throws Exception {
+        RecordingSession session = connect();
+        AuthPrincipal principal = authService.authenticate(authService.generateToken(1L, username, "driver", busId));
+        session.getAttributes().put(AuthHandshakeInterceptor.PRINCIPAL_ATTRIBUTE, principal);
+        handler.handleMessage(session, new TextMessage("{\"type\":\"driver-register\",\"data\":{}}"));
+        return session;
+    }
+
+    private RecordingSession connectRider(String userId) throws Exception {
+        RecordingSession session = connect();
+        handler.handleMessage(session, new TextMessage(
+                "{\"type\":\"user-register\",\"data\":{\"userId\":\"" + userId + "\",\"subscriptions\":[\"all\"]}}"));
+        return session;
+    }
+
+    private static TextMessage location(String type, double lat, double lng) {
+        return new TextMessage("{\"type\":\"" + type + "\",\"data\":{\"coords\":[" + lat + "," + lng + "],\"accuracy\":5}}");
+    }
+}